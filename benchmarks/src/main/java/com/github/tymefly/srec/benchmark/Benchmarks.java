@@ -0,0 +1,38 @@
+package com.github.tymefly.srec.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Entry point for the benchmark jar. This accepts the standard JMH command line options, and always adds the GC
+ * profiler so that the allocation rate of each benchmark is reported alongside its time. For example
+ * <pre>
+ *     java -jar target/benchmarks.jar LoadBenchmark -p sizeKiB=1024 -p recordSize=16,64
+ * </pre>
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+
+    /**
+     * Run the benchmarks
+     * @param args      JMH command line options
+     * @throws CommandLineOptionException if the options are invalid
+     * @throws RunnerException if the benchmarks could not be run
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.tymefly.srec.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.tymefly.srec.SLoader;
+import com.github.tymefly.srec.SVisitor;
+
+
+/**
+ * Benchmarks for the cost of checksum verification. Checksums are accumulated as each record is decoded, so they
+ * can not be measured on their own; instead the same file is parsed with and without verification, and the
+ * difference is the cost of the checksums. The records are passed to a visitor so that no image is built
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+    private static final int KIB = 1024;
+
+    /** Number of KiB of data in the file */
+    @Param({"65536"})
+    public int sizeKiB;
+
+    /** Number of data bytes in each record */
+    @Param({"16", "32", "250"})
+    public int recordSize;
+
+    @Param({"true", "false"})
+    public boolean verify;
+
+    private File file;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Inputs.createFile(sizeKiB * KIB, Integer.SIZE, recordSize, Inputs.Layout.DENSE);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        SLoader loader = new SLoader(file);
+
+        if (!verify) {
+            loader.withoutChecksumVerification();
+        }
+
+        loader.visit(new SVisitor() {
+            @Override
+            public void onData(long address, byte[] buffer, int offset, int length) {
+                blackhole.consume(buffer);
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.tymefly.srec.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.tymefly.srec.SLoader;
+import com.github.tymefly.srec.SVisitor;
+import com.github.tymefly.srec.SWriter;
+
+
+/**
+ * Benchmarks for hex decoding and encoding through the public API. Each operation reads or writes a file of
+ * {@link #RECORDS} records with {@code length} data bytes each, and the time is reported for each record. Decoding
+ * visits the file so that no image is built, and encoding streams the records from heap and direct buffers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(HexBenchmark.RECORDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HexBenchmark {
+    /** Number of records in each file */
+    static final int RECORDS = 4096;
+
+    /** Number of data bytes in each record */
+    @Param({"16", "32", "64", "250"})
+    public int length;
+
+    private File source;
+    private File destination;
+    private ByteBuffer heapData;
+    private ByteBuffer directData;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] data = Inputs.data(length * RECORDS);
+
+        source = Inputs.createFile(data.length, Integer.SIZE, length, Inputs.Layout.DENSE);
+        destination = Files.createTempFile("srec-benchmark", ".srec").toFile();
+        destination.deleteOnExit();
+        heapData = ByteBuffer.wrap(data);
+        directData = ByteBuffer.allocateDirect(data.length);
+        directData.put(data).flip();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : new File[] { source, destination }) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+
+    /**
+     * Decode each record of a file and verify its checksum
+     * @param blackhole     Consumes the decoded data
+     */
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        new SLoader(source).visit(new SVisitor() {
+            @Override
+            public void onData(long address, byte[] buffer, int offset, int length) {
+                blackhole.consume(buffer);
+            }
+        });
+    }
+
+
+    /**
+     * Encode records from a heap buffer
+     */
+    @Benchmark
+    public void encodeHeap() {
+        encode(heapData);
+    }
+
+
+    /**
+     * Encode records from a direct buffer, as used for memory mapped binary files
+     */
+    @Benchmark
+    public void encodeDirect() {
+        encode(directData);
+    }
+
+
+    private void encode(ByteBuffer data) {
+        try (
+            SWriter writer = SWriter.streaming(destination)
+        ) {
+            writer.setAddressSize(Integer.SIZE);
+            writer.setRecordSize(length);
+            writer.withData(0, data.duplicate());
+        }
+    }
+}
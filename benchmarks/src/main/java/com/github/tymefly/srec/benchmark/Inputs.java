@@ -0,0 +1,122 @@
+package com.github.tymefly.srec.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import com.github.tymefly.srec.SWriter;
+
+
+/**
+ * Generator for synthetic S-Record files. The content is random, but it is generated from a fixed seed so that
+ * every run of a benchmark reads the same file.
+ */
+public final class Inputs {
+    /** Size of each block of data in a sparse file. Blocks are separated by gaps of the same size */
+    public static final int SPARSE_BLOCK_SIZE = 4 * 1024;
+
+    /** Largest amount of data that can be addressed by S1 records */
+    public static final int MAX_DATA_16 = 64 * 1024;
+
+    private static final long SEED = 0x5245_4331L;
+    private static final int BITS_16 = 16;
+
+
+    /** How the data is laid out in the address space */
+    public enum Layout {
+        /** A single contiguous block of data */
+        DENSE,
+
+        /** Blocks of data separated by gaps */
+        SPARSE
+    }
+
+
+    private Inputs() {
+    }
+
+
+    /**
+     * Returns random data from the fixed seed
+     * @param size          Number of bytes to return
+     * @return random data
+     */
+    @Nonnull
+    public static byte[] data(int size) {
+        byte[] data = new byte[size];
+
+        new Random(SEED).nextBytes(data);
+
+        return data;
+    }
+
+
+    /**
+     * Returns the number of data bytes that will be written for a requested size. S1 records can only address
+     * 64 KiB, and a sparse layout uses half of the address space for gaps, so the size is reduced if it will not fit
+     * @param size          Requested number of data bytes
+     * @param addressBits   Number of bits in each address; 16, 24 or 32
+     * @param layout        How the data is laid out in the address space
+     * @return the number of data bytes that will be written
+     */
+    public static int dataSize(int size, int addressBits, @Nonnull Layout layout) {
+        int limit = (addressBits == BITS_16 ? MAX_DATA_16 : Integer.MAX_VALUE);
+
+        if (layout == Layout.SPARSE) {
+            limit /= 2;
+        }
+
+        return Math.min(size, limit);
+    }
+
+
+    /**
+     * Write a synthetic S-Record file to a new temporary file
+     * @param size          Requested number of data bytes
+     * @param addressBits   Number of bits in each address; 16, 24 or 32
+     * @param recordSize    Number of data bytes in each record
+     * @param layout        How the data is laid out in the address space
+     * @return the new file. The caller should delete it
+     * @throws IOException if the file could not be created
+     */
+    @Nonnull
+    public static File createFile(int size, int addressBits, int recordSize, @Nonnull Layout layout)
+            throws IOException {
+        File file = Files.createTempFile("srec-benchmark", ".srec").toFile();
+
+        file.deleteOnExit();
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.setAddressSize(addressBits);
+            writer.setRecordSize(recordSize);
+            writer.withHeader("benchmark");
+            write(writer, data(dataSize(size, addressBits, layout)), layout);
+        }
+
+        return file;
+    }
+
+
+    /**
+     * Add {@code data} to a writer with the requested layout
+     * @param writer        Writer that the data is added to
+     * @param data          Data to add
+     * @param layout        How the data is laid out in the address space
+     */
+    public static void write(@Nonnull SWriter writer, @Nonnull byte[] data, @Nonnull Layout layout) {
+        if (layout == Layout.DENSE) {
+            writer.withData(0, data, 0, data.length);
+        } else {
+            for (int offset = 0; offset < data.length; offset += SPARSE_BLOCK_SIZE) {
+                int length = Math.min(SPARSE_BLOCK_SIZE, data.length - offset);
+
+                writer.withData(offset * 2, data, offset, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.tymefly.srec.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tymefly.srec.SReader;
+
+
+/**
+ * Benchmarks for loading S-Record files with {@link SReader}. Each combination of parameters reads a synthetic
+ * file that is generated once per trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+    private static final int KIB = 1024;
+
+    /** Number of KiB of data in the file. S1 files are limited to 64 KiB */
+    @Param({"64", "65536"})
+    public int sizeKiB;
+
+    /** Number of bits in each address: 16 for S1, 24 for S2 and 32 for S3 records */
+    @Param({"16", "24", "32"})
+    public int addressBits;
+
+    /** Number of data bytes in each record */
+    @Param({"32"})
+    public int recordSize;
+
+    @Param({"DENSE", "SPARSE"})
+    public Inputs.Layout layout;
+
+    private File file;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Inputs.createFile(sizeKiB * KIB, addressBits, recordSize, layout);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+
+    @Benchmark
+    public SReader load() {
+        return SReader.load(file);
+    }
+
+
+    @Benchmark
+    public SReader loadMapped() {
+        return SReader.loadMapped(file);
+    }
+}
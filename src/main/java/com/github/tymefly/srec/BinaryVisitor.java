@@ -0,0 +1,156 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Visitor that writes the data records of an S-Record file to a raw binary file. The byte at each address is
+ * written at offset {@code address - base} in the file. Contiguous records are gathered into a single buffer before
+ * they are written, and nothing is written for gaps between records, so large gaps become holes in the file on
+ * file systems that support sparse files. If the fill byte is not zero then the gaps are filled once the whole
+ * S-Record file has been read.
+ */
+class BinaryVisitor implements SVisitor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long base;
+    private final byte fill;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final TreeMap<Long, Long> written = new TreeMap<>();
+    private long bufferAddress = 0;
+    private long end;
+
+
+    /**
+     * Constructor
+     * @param channel       File that the binary image is written to. The caller is responsible for closing it
+     * @param base          Address that is written to the start of the file
+     * @param fill          Value written to addresses that are not in any data record
+     */
+    BinaryVisitor(@Nonnull FileChannel channel, long base, byte fill) {
+        this.channel = channel;
+        this.base = base;
+        this.fill = fill;
+        this.end = base;
+    }
+
+
+    @Override
+    public void onData(long address, @Nonnull byte[] data, int offset, int length) {
+        if (address < base) {
+            throw new SRecordException("Data at address 0x%x is below the base address 0x%x", address, base);
+        }
+
+        try {
+            boolean contiguous = (address == bufferAddress + buffer.position());
+
+            if (!contiguous || (buffer.remaining() < length)) {
+                flush();
+                bufferAddress = address;
+            }
+
+            buffer.put(data, offset, length);
+            end = Math.max(end, address + length);
+        } catch (IOException e) {
+            throw new SRecordException("Failed to write binary file", e);
+        }
+    }
+
+
+    /**
+     * Write any buffered data and fill any gaps
+     * @return the size of the binary image
+     * @throws IOException if the file could not be written
+     */
+    long finish() throws IOException {
+        flush();
+
+        if (fill != 0) {
+            fillGaps();
+        }
+
+        return end - base;
+    }
+
+
+    private void flush() throws IOException {
+        if (buffer.position() != 0) {
+            long start = bufferAddress;
+
+            buffer.flip();
+            int count = write(buffer, start - base);
+            buffer.clear();
+
+            if (fill != 0) {
+                markWritten(start, start + count);
+            }
+        }
+    }
+
+
+    /**
+     * Record that a range of addresses has been written, merging it with any ranges that it overlaps or touches
+     * @param start         First address that was written
+     * @param limit         Address after the last address that was written
+     */
+    private void markWritten(long start, long limit) {
+        Map.Entry<Long, Long> floor = written.floorEntry(start);
+        long first = start;
+        long last = limit;
+
+        if (floor != null && floor.getValue() >= start) {
+            first = floor.getKey();
+            last = Math.max(last, floor.getValue());
+        }
+
+        Map.Entry<Long, Long> next = written.ceilingEntry(first);
+
+        while (next != null && next.getKey() <= last) {
+            last = Math.max(last, next.getValue());
+            written.remove(next.getKey());
+            next = written.ceilingEntry(first);
+        }
+
+        written.put(first, last);
+    }
+
+
+    private void fillGaps() throws IOException {
+        long position = base;
+
+        buffer.clear();
+
+        while (buffer.hasRemaining()) {
+            buffer.put(fill);
+        }
+
+        for (Map.Entry<Long, Long> range : written.entrySet()) {
+            while (position < range.getKey()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), range.getKey() - position));
+                position += write(buffer, position - base);
+            }
+
+            position = range.getValue();
+        }
+    }
+
+
+    private int write(@Nonnull ByteBuffer source, long offset) throws IOException {
+        int count = source.remaining();
+        long position = offset;
+
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,378 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Parse a memory mapped S-Record file as a number of chunks on a {@link ForkJoinPool}. Chunks are split at line
+ * boundaries and parsed independently, then merged in file order. If a chunk contains an error, or is inconsistent
+ * with the chunks before it, then it is parsed again with the exact state of the file at the start of the chunk so
+ * that the same error is reported, on the same line, as a sequential parse.
+ */
+class ChunkedParser {
+    /**
+     * Results of parsing a chunk of a file in isolation. The number of data records and lines before the chunk
+     * are not known until the chunks before it have been parsed, so sequence checks are made when chunks are merged
+     */
+    private static class Chunk {
+        private static final int UNKNOWN = -1;
+
+        private final int index;
+        private final long start;
+        private final long end;
+        private final SMetrics metrics;
+        private final List<Consumer<SVisitor>> events = new ArrayList<>();
+        private int lines = 0;
+        private int dataRecords = 0;
+        private int expectedBefore = UNKNOWN;
+        private boolean hasRecords = false;
+        private boolean hasTerminated = false;
+        private boolean consistent = true;
+        private SRecordException error = null;
+
+        Chunk(int index, long start, long end, boolean measured) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.metrics = (measured ? new SMetrics(true, false) : null);
+        }
+
+        /**
+         * Record that a count record expects {@code expected} data records, which implies the number of data
+         * records that must appear in the file before this chunk
+         * @param expected      value of the count record
+         */
+        void expectCount(int expected) {
+            int before = expected - dataRecords;
+
+            consistent = consistent && (before >= 0) && ((expectedBefore == UNKNOWN) || (expectedBefore == before));
+            expectedBefore = before;
+        }
+
+        boolean isValid(int dataRecordsBefore, boolean terminatedBefore) {
+            boolean valid = (error == null) && consistent;
+            valid = valid && !(terminatedBefore && hasRecords);
+            valid = valid && ((expectedBefore == UNKNOWN) || (expectedBefore == dataRecordsBefore));
+
+            return valid;
+        }
+    }
+
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Chunks that are parsed ahead of the merge, which limits the number of records that are buffered */
+    private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+    /** Only every Nth chunk is recorded by Java Flight Recorder, which is on average one chunk for each thread */
+    private static final int FLIGHT_SAMPLE_INTERVAL = CHUNKS_PER_THREAD;
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 4096;
+
+    private final String source;
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final boolean verifyChecksums;
+
+
+    /**
+     * Create a parser for a file
+     * @param source            Path of the file, which is used to identify flight recorder events
+     * @param channel           File to parse. The caller is responsible for closing the channel
+     * @param pool              Pool used to parse the chunks
+     * @param verifyChecksums   {@code true} if the checksum of each record should be verified
+     */
+    ChunkedParser(@Nonnull String source,
+                  @Nonnull FileChannel channel,
+                  @Nonnull ForkJoinPool pool,
+                  boolean verifyChecksums) {
+        this.source = source;
+        this.channel = channel;
+        this.pool = pool;
+        this.verifyChecksums = verifyChecksums;
+    }
+
+
+    /**
+     * Parse the file, passing each record to the {@code visitor} in file order. The records in each chunk are
+     * buffered until all the chunks before it have been passed to the visitor, and only a few chunks are parsed
+     * ahead of the one that is being passed to the visitor.
+     * @param visitor       Visitor that is notified of each record
+     * @param metrics       Collects measurements of the parse, or {@code null} if the parse is not measured
+     * @throws IOException if the file could not be read
+     * @throws SRecordException if the file is not a valid S-Record file
+     */
+    void parse(@Nonnull SVisitor visitor, @Nullable SMetrics metrics) throws IOException {
+        Iterator<Chunk> chunks = split(pool.getParallelism() * CHUNKS_PER_THREAD, metrics != null).iterator();
+        Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+        int ahead = pool.getParallelism() * CHUNKS_AHEAD_PER_THREAD;
+
+        try {
+            int lines = 0;
+            int dataRecords = 0;
+            boolean hasTerminated = false;
+
+            submit(pending, chunks, ahead);
+
+            while (!pending.isEmpty()) {
+                Chunk chunk = pending.removeFirst().join();
+
+                submit(pending, chunks, ahead);
+
+                if (!chunk.isValid(dataRecords, hasTerminated)) {
+                    reparseChunk(chunk, lines, dataRecords, hasTerminated);
+                }
+
+                replay(chunk, visitor, metrics);
+                chunk.events.clear();
+                lines += chunk.lines;
+                dataRecords += chunk.dataRecords;
+                hasTerminated |= chunk.hasTerminated;
+            }
+
+            if (!hasTerminated) {
+                throw new SRecordException("Unexpected EOF");
+            } else if (metrics != null) {
+                metrics.addTransfer(channel.size(), 0);
+                metrics.addLines(lines);
+            }
+        } finally {
+            pending.forEach(t -> t.cancel(false));
+        }
+    }
+
+
+    /**
+     * Start parsing the next chunks until {@code limit} chunks are waiting to be merged
+     * @param pending       Chunks that are being parsed, in file order
+     * @param chunks        Chunks that have not been submitted to the {@link #pool}
+     * @param limit         Maximum number of chunks that are parsed ahead of the merge
+     */
+    private void submit(@Nonnull Deque<ForkJoinTask<Chunk>> pending, @Nonnull Iterator<Chunk> chunks, int limit) {
+        while ((pending.size() < limit) && chunks.hasNext()) {
+            Chunk chunk = chunks.next();
+
+            pending.addLast(pool.submit(() -> parseChunk(chunk)));
+        }
+    }
+
+
+    /**
+     * Split the file into approximately {@code count} chunks, each of which ends at the end of a line
+     * @param count         Preferred number of chunks
+     * @param measured      {@code true} if each chunk should collect metrics
+     * @return  The chunks that cover the whole file
+     * @throws IOException  if the file could not be read
+     */
+    @Nonnull
+    private List<Chunk> split(int count, boolean measured) throws IOException {
+        long size = channel.size();
+        long chunks = Math.max(1, Math.min(count, size / MIN_CHUNK_SIZE));
+        List<Chunk> result = new ArrayList<>();
+        long previous = 0;
+
+        for (long i = 1; i < chunks; i++) {
+            long boundary = nextLine(Math.max(previous, (size * i) / chunks), size);
+
+            if (boundary != previous && boundary != size) {
+                result.add(new Chunk(result.size(), previous, boundary, measured));
+                previous = boundary;
+            }
+        }
+
+        result.add(new Chunk(result.size(), previous, size, measured));
+
+        return result;
+    }
+
+
+    /**
+     * Returns the offset of the start of the first line that starts after {@code position}
+     * @param position      Offset to start searching from
+     * @param size          Size of the file
+     * @return the offset of the start of the next line, or {@code size} if there are no more lines
+     * @throws IOException  if the file could not be read
+     */
+    private long nextLine(long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        boolean afterCarriageReturn = false;
+        long result = size;
+        long offset = position;
+
+        while (result == size && offset < size) {
+            buffer.clear();
+            channel.read(buffer, offset);
+            buffer.flip();
+
+            while (result == size && buffer.hasRemaining()) {
+                byte next = buffer.get();
+
+                if (afterCarriageReturn) {
+                    result = (next == '\n' ? offset + 1 : offset);
+                } else if (next == '\n') {
+                    result = offset + 1;
+                } else {
+                    afterCarriageReturn = (next == '\r');
+                }
+
+                offset++;
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Parse a {@code chunk} of the file in isolation
+     * @param chunk         Chunk of the file to parse. This will be updated with the results
+     * @return the {@code chunk}
+     */
+    @Nonnull
+    private Chunk parseChunk(@Nonnull Chunk chunk) {
+        FlightEvents flight =
+            (isSampled(chunk.index) ? FlightEvents.chunk(source, chunk.start, chunk.end) : FlightEvents.none());
+        SParser parser = SParser.forMappedFile(channel, chunk.start, chunk.end)
+            .asFragment(0)
+            .withChecksums(verifyChecksums);
+
+        try {
+            while (parser.next()) {
+                chunk.hasRecords = true;
+                chunk.events.add(capture(chunk, parser));
+
+                if (chunk.metrics != null) {
+                    chunk.metrics.addRecord(parser.getType(), parser.getAddress(), parser.getDataLength());
+                }
+            }
+
+            chunk.lines = parser.getLineNumber();
+            flight.commit(chunk.events.size(), chunk.lines);
+        } catch (SRecordException e) {
+            chunk.error = e;
+        } catch (IOException e) {
+            chunk.error = new SRecordException("Failed to read chunk", e);
+        }
+
+        return chunk;
+    }
+
+
+    /**
+     * Returns {@code true} if a chunk is sampled by Java Flight Recorder. The first chunk, and every
+     * {@link #FLIGHT_SAMPLE_INTERVAL}th chunk after it, is sampled
+     * @param index         Index of the chunk in the file, starting from 0
+     * @return {@code true} if a chunk event is recorded for the chunk
+     */
+    static boolean isSampled(int index) {
+        return (index % FLIGHT_SAMPLE_INTERVAL) == 0;
+    }
+
+
+    /**
+     * Pass the records of a valid {@code chunk} to the {@code visitor}, and add the measurements of the chunk
+     * @param chunk         Chunk that has been parsed and validated
+     * @param visitor       Visitor that is notified of each record
+     * @param metrics       Collects measurements of the parse, or {@code null} if the parse is not measured
+     */
+    private void replay(@Nonnull Chunk chunk, @Nonnull SVisitor visitor, @Nullable SMetrics metrics) {
+        long started = System.nanoTime();
+
+        chunk.events.forEach(e -> e.accept(visitor));
+
+        if (metrics != null) {
+            metrics.addVisitor(System.nanoTime() - started);
+            metrics.merge(chunk.metrics);
+        }
+    }
+
+
+    /**
+     * Returns a copy of the record that has just been parsed that can be replayed to a visitor later.
+     * @param chunk         Chunk that contains the record. The record counts will be updated
+     * @param parser        Parser that has just decoded a record
+     * @return a copy of the record that has just been parsed
+     */
+    @Nonnull
+    private Consumer<SVisitor> capture(@Nonnull Chunk chunk, @Nonnull SParser parser) {
+        long address = parser.getAddress();
+        Consumer<SVisitor> event;
+
+        switch (parser.getType()) {
+            case HEADER:
+                String header = parser.getHeader();
+
+                event = v -> v.onHeader(header);
+                break;
+
+            case DATA_16:
+            case DATA_24:
+            case DATA_32:
+                byte[] data = Arrays.copyOf(parser.getData(), parser.getDataLength());
+
+                event = v -> v.onData(address, data, 0, data.length);
+                chunk.dataRecords++;
+                break;
+
+            case COUNT_16:
+            case COUNT_24:
+                event = v -> v.onCount((int) address);
+                chunk.expectCount((int) address);
+                break;
+
+            case START_ADDRESS_16:
+            case START_ADDRESS_24:
+            case START_ADDRESS_32:
+                event = v -> v.onStart(address);
+                chunk.hasTerminated = true;
+                break;
+
+            default:
+                event = v -> { };
+                break;
+        }
+
+        return event;
+    }
+
+
+    /**
+     * Parse a {@code chunk} that is known to be invalid with the exact state of the file at the start of the chunk
+     * so that the correct exception is thrown. The error that was found when the chunk was parsed in isolation is
+     * not thrown, as its line number is relative to the start of the chunk.
+     * @param chunk             Invalid chunk
+     * @param lines             Number of lines before the chunk
+     * @param dataRecords       Number of data records before the chunk
+     * @param hasTerminated     {@code true} if the file was terminated before the chunk
+     * @throws IOException  if the file could not be read
+     */
+    private void reparseChunk(@Nonnull Chunk chunk, int lines, int dataRecords, boolean hasTerminated)
+            throws IOException {
+        SParser parser = SParser.forMappedFile(channel, chunk.start, chunk.end)
+            .asFragment(lines)
+            .withState(dataRecords, hasTerminated)
+            .withChecksums(verifyChecksums);
+
+        while (parser.next()) {
+            // Parsing an invalid chunk will always throw an exception
+        }
+
+        String message = String.format("Invalid records near line %d", lines + 1);
+
+        throw (chunk.error == null ? new SRecordException(message) : new SRecordException(message, chunk.error));
+    }
+}
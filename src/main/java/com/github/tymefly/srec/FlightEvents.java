@@ -0,0 +1,387 @@
+package com.github.tymefly.srec;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Java Flight Recorder events for loads, writes and the chunks of a parallel load. JFR is not part of the Java 8
+ * API, so it is looked up at run time the first time an event is started; on a runtime without JFR, such as an
+ * older Java 8 or a custom runtime image without the {@code jdk.jfr} module, no events are recorded. The event
+ * types are defined through {@code jdk.jfr.EventFactory} and driven by reflection, so no JFR class is needed to
+ * load this class. An event is only started if it is enabled in a running recording, so there is little cost when
+ * nothing is being recorded. Chunk events are sampled by {@link ChunkedParser}, which only starts an event for every
+ * few chunks of a load.
+ */
+final class FlightEvents {
+    private static final FlightEvents DISABLED = new FlightEvents(null, false);
+
+    /** The JFR event; typed as an Object as the JFR API is not part of Java 8 */
+    private final Object event;
+    private final boolean load;
+
+
+    private FlightEvents(@Nullable Object event, boolean load) {
+        this.event = event;
+        this.load = load;
+    }
+
+
+    /**
+     * Start an event for a load of a file
+     * @param source        Path of the file that is read
+     * @return the started event
+     */
+    @Nonnull
+    static FlightEvents load(@Nonnull String source) {
+        Kernel kernel = Kernel.INSTANCE;
+
+        return wrap((kernel == null ? null : kernel.start(kernel.loadType, source)), true);
+    }
+
+
+    /**
+     * Start an event for a write of a file
+     * @param destination   Path of the file that is written
+     * @return the started event
+     */
+    @Nonnull
+    static FlightEvents write(@Nonnull String destination) {
+        Kernel kernel = Kernel.INSTANCE;
+
+        return wrap((kernel == null ? null : kernel.start(kernel.writeType, destination)), false);
+    }
+
+
+    /**
+     * Returns an event that is never recorded, for a chunk of a parallel load that is not sampled
+     * @return an event that is never recorded
+     */
+    @Nonnull
+    static FlightEvents none() {
+        return DISABLED;
+    }
+
+
+    /**
+     * Start an event for a chunk of a parallel load
+     * @param source        Path of the file that is read
+     * @param start         Offset into the file of the first byte of the chunk
+     * @param end           Offset into the file of the first byte after the chunk
+     * @return the started event
+     */
+    @Nonnull
+    static FlightEvents chunk(@Nonnull String source, long start, long end) {
+        Kernel kernel = Kernel.INSTANCE;
+
+        return wrap((kernel == null ? null : kernel.chunk(source, start, end)), false);
+    }
+
+
+    /**
+     * Returns {@code true} if the event is being recorded, in which case it needs to be passed the metrics of
+     * the operation when it ends
+     * @return {@code true} if the event is being recorded
+     */
+    boolean isEnabled() {
+        return (event != null);
+    }
+
+
+    /**
+     * End a load or write event and commit it to the recording
+     * @param metrics       Measurements of the operation
+     */
+    void commit(@Nonnull SMetrics metrics) {
+        if (event != null) {
+            Kernel.INSTANCE.commit(event, metrics, load);
+        }
+    }
+
+
+    /**
+     * End a chunk event and commit it to the recording
+     * @param records       Number of records in the chunk
+     * @param lines         Number of lines in the chunk
+     */
+    void commit(int records, int lines) {
+        if (event != null) {
+            Kernel.INSTANCE.commit(event, records, lines);
+        }
+    }
+
+
+    @Nonnull
+    private static FlightEvents wrap(@Nullable Object event, boolean load) {
+        return (event == null ? DISABLED : new FlightEvents(event, load));
+    }
+
+
+    /**
+     * The JFR code. This class is only initialised when the first event is started, and {@link #INSTANCE} is
+     * {@code null} if JFR is not available. The event factories are held for the life of the class, as JFR
+     * unregisters the event types of a factory once it is garbage collected
+     */
+    private static final class Kernel {
+        private static final String JFR = "jdk.jfr.";
+        private static final String CATEGORY = "S-Record";
+
+        /** Index of each field of the load and write events */
+        private static final int FILE = 0;
+        private static final int BYTES = 1;
+        private static final int LINES = 2;
+        private static final int RECORDS = 3;
+        private static final int LOWEST_ADDRESS = 4;
+        private static final int HIGHEST_ADDRESS = 5;
+        private static final int IO_TIME = 6;
+        private static final int CODEC_TIME = 7;
+        private static final int VISITOR_TIME = 8;
+        private static final int CHECKSUM_VERIFIED = 9;
+
+        /** Index of each field of the chunk events, after the file */
+        private static final int CHUNK_OFFSET = 1;
+        private static final int CHUNK_BYTES = 2;
+        private static final int CHUNK_RECORDS = 3;
+        private static final int CHUNK_LINES = 4;
+
+        private static final Kernel INSTANCE = create();
+
+        private final Constructor<?> annotation;
+        private final Constructor<?> field;
+        private final Object dataAmount;
+        private final Object timespan;
+        private final Method factoryNewEvent;
+        private final Method eventIsEnabled;
+        private final Method eventBegin;
+        private final Method eventEnd;
+        private final Method eventShouldCommit;
+        private final Method eventCommit;
+        private final Method eventSet;
+        private final Object loadType;
+        private final Object writeType;
+        private final Object chunkType;
+
+
+        private Kernel() throws ReflectiveOperationException {
+            Class<?> element = Class.forName(JFR + "AnnotationElement");
+            Class<?> factory = Class.forName(JFR + "EventFactory");
+            Class<?> event = Class.forName(JFR + "Event");
+
+            annotation = element.getConstructor(Class.class, Object.class);
+            field = Class.forName(JFR + "ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            dataAmount = annotation("DataAmount", "BYTES");
+            timespan = annotation("Timespan", "NANOSECONDS");
+            factoryNewEvent = factory.getMethod("newEvent");
+            eventIsEnabled = event.getMethod("isEnabled");
+            eventBegin = event.getMethod("begin");
+            eventEnd = event.getMethod("end");
+            eventShouldCommit = event.getMethod("shouldCommit");
+            eventCommit = event.getMethod("commit");
+            eventSet = event.getMethod("set", int.class, Object.class);
+
+            List<Object> loadFields = fileFields();
+            List<Object> writeFields = fileFields();
+
+            loadFields.add(field(long.class, "visitorTime", "Visitor Time", null, timespan));
+            loadFields.add(field(boolean.class, "checksumVerified", "Checksums Verified", null, null));
+
+            loadType = define(factory, "Load", "S-Record Load", "A file is loaded, visited or converted", loadFields);
+            writeType = define(factory, "Write", "S-Record Write",
+                "A writer is closed. For a streaming writer the event covers the life of the writer", writeFields);
+            chunkType = define(factory, "Chunk", "S-Record Chunk",
+                "A chunk of a parallel load is parsed. Only the first chunk of a load, and every 4th chunk after it, "
+                    + "is sampled",
+                Arrays.asList(
+                    field(String.class, "file", "File", null, null),
+                    field(long.class, "offset", "Offset", null, dataAmount),
+                    field(long.class, "bytes", "Size", null, dataAmount),
+                    field(long.class, "records", "Records", null, null),
+                    field(long.class, "lines", "Lines", null, null)));
+        }
+
+
+        @Nullable
+        private static Kernel create() {
+            Kernel kernel;
+
+            try {
+                Method available = Class.forName(JFR + "FlightRecorder").getMethod("isAvailable");
+
+                kernel = (Boolean.TRUE.equals(available.invoke(null)) ? new Kernel() : null);
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                kernel = null;
+            }
+
+            return kernel;
+        }
+
+
+        /** Fields that are common to loads and writes, in the order of their indexes */
+        @Nonnull
+        private List<Object> fileFields() throws ReflectiveOperationException {
+            return new ArrayList<>(Arrays.asList(
+                field(String.class, "file", "File", null, null),
+                field(long.class, "bytes", "Size", null, dataAmount),
+                field(long.class, "lines", "Lines", null, null),
+                field(long.class, "records", "Records", null, null),
+                field(long.class, "lowestAddress", "Lowest Address",
+                    "Lowest address of any data byte, or -1 if there is no data", null),
+                field(long.class, "highestAddress", "Highest Address",
+                    "Highest address of any data byte, or -1 if there is no data", null),
+                field(long.class, "ioTime", "I/O Time", null, timespan),
+                field(long.class, "codecTime", "Codec Time",
+                    "Time spent splitting lines, decoding or encoding records and verifying checksums", timespan)));
+        }
+
+
+        @Nonnull
+        private Object define(@Nonnull Class<?> factory,
+                              @Nonnull String name,
+                              @Nonnull String label,
+                              @Nonnull String description,
+                              @Nonnull List<Object> fields) throws ReflectiveOperationException {
+            List<Object> annotations = Arrays.asList(
+                annotation("Name", "com.github.tymefly.srec." + name),
+                annotation("Label", label),
+                annotation("Description", description),
+                annotation("Category", new String[] { CATEGORY }));
+
+            return factory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+        }
+
+
+        @Nonnull
+        private Object field(@Nonnull Class<?> type,
+                             @Nonnull String name,
+                             @Nonnull String label,
+                             @Nullable String description,
+                             @Nullable Object unit) throws ReflectiveOperationException {
+            List<Object> annotations = new ArrayList<>();
+
+            annotations.add(annotation("Label", label));
+
+            if (description != null) {
+                annotations.add(annotation("Description", description));
+            }
+
+            if (unit != null) {
+                annotations.add(unit);
+            }
+
+            return field.newInstance(type, name, Collections.unmodifiableList(annotations));
+        }
+
+
+        @Nonnull
+        private Object annotation(@Nonnull String type, @Nonnull Object value) throws ReflectiveOperationException {
+            return annotation.newInstance(Class.forName(JFR + type), value);
+        }
+
+
+        @Nullable
+        private Object start(@Nonnull Object type, @Nonnull String file) {
+            Object started = null;
+
+            try {
+                Object event = factoryNewEvent.invoke(type);
+
+                if (Boolean.TRUE.equals(eventIsEnabled.invoke(event))) {
+                    eventSet.invoke(event, FILE, file);
+                    eventBegin.invoke(event);
+                    started = event;
+                }
+            } catch (ReflectiveOperationException e) {
+                started = null;
+            }
+
+            return started;
+        }
+
+
+        @Nullable
+        private Object chunk(@Nonnull String file, long start, long end) {
+            Object started = start(chunkType, file);
+
+            if (started != null) {
+                set(started, CHUNK_OFFSET, start);
+                set(started, CHUNK_BYTES, end - start);
+            }
+
+            return started;
+        }
+
+
+        private void commit(@Nonnull Object event, @Nonnull SMetrics metrics, boolean load) {
+            if (stop(event)) {
+                set(event, BYTES, metrics.getBytes());
+                set(event, LINES, metrics.getLines());
+                set(event, RECORDS, metrics.getRecords());
+                set(event, LOWEST_ADDRESS, metrics.getLowestAddress());
+                set(event, HIGHEST_ADDRESS, metrics.getHighestAddress());
+                set(event, IO_TIME, metrics.getIoNanos());
+                set(event, CODEC_TIME, metrics.getCodecNanos());
+
+                if (load) {
+                    set(event, VISITOR_TIME, metrics.getVisitorNanos());
+                    set(event, CHECKSUM_VERIFIED, metrics.isChecksumVerified());
+                }
+
+                invoke(eventCommit, event);
+            }
+        }
+
+
+        private void commit(@Nonnull Object event, int records, int lines) {
+            if (stop(event)) {
+                set(event, CHUNK_RECORDS, (long) records);
+                set(event, CHUNK_LINES, (long) lines);
+                invoke(eventCommit, event);
+            }
+        }
+
+
+        /**
+         * End an event
+         * @param event         Started event
+         * @return {@code true} if the event should be committed
+         */
+        private boolean stop(@Nonnull Object event) {
+            invoke(eventEnd, event);
+
+            return Boolean.TRUE.equals(invoke(eventShouldCommit, event));
+        }
+
+
+        private void set(@Nonnull Object event, int index, @Nonnull Object value) {
+            invoke(eventSet, event, index, value);
+        }
+
+
+        /**
+         * Call a method of a started event. Events are only diagnostics, so failures are ignored
+         * @param method        Method of the event
+         * @param event         Started event
+         * @param args          Arguments for the method
+         * @return the result of the method, or {@code null} if it failed
+         */
+        @Nullable
+        private static Object invoke(@Nonnull Method method, @Nonnull Object event, @Nonnull Object... args) {
+            Object result;
+
+            try {
+                result = method.invoke(event, args);
+            } catch (ReflectiveOperationException e) {
+                result = null;
+            }
+
+            return result;
+        }
+    }
+}
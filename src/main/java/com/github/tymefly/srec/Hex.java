@@ -0,0 +1,289 @@
+package com.github.tymefly.srec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Lookup tables for converting between ASCII hex digits and binary values without any intermediate objects
+ */
+final class Hex {
+    /** Value returned by the decode methods if a character is not a hex digit. */
+    static final int INVALID = -1;
+
+    private static final int TABLE_SIZE = 256;
+    private static final int MASK_BYTE = 0xff;
+    private static final int BITS_IN_NIBBLE = 4;
+    private static final int DECIMAL_DIGITS = 10;
+    private static final int HEX_LETTERS = 6;
+    private static final int MASK_LSN = 0xf;
+    private static final int BITS_IN_BYTE = 8;
+    private static final int DIGITS_IN_BYTE = 2;
+
+    // SWAR constants. Each operates on all 8 bytes of a long at once
+    private static final int WORD_BYTES = Long.BYTES / DIGITS_IN_BYTE;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = ONES * 0x80;
+    private static final long LOW_NIBBLES = ONES * MASK_LSN;
+    private static final long LOWER_CASE = ONES * ('a' - 'A');
+    private static final long FROM_DIGITS = ONES * (0x80 - '0');              // Sets the high bit if >= '0'
+    private static final long ABOVE_DIGITS = ONES * (0x80 - '9' - 1);         // Sets the high bit if > '9'
+    private static final long FROM_LETTERS = ONES * (0x80 - 'a');             // Sets the high bit if >= 'a'
+    private static final long ABOVE_LETTERS = ONES * (0x80 - 'f' - 1);        // Sets the high bit if > 'f'
+    private static final long LETTER_OFFSET = DECIMAL_DIGITS - 1;             // ('A' & 0xf) + 9 == 10
+    private static final long BYTE_LANES = 0x00ff00ff00ff00ffL;
+    private static final long SHORT_LANES = 0x0000ffff0000ffffL;
+    private static final long SUM_LANES = 0x0001000100010001L;
+    private static final int SUM_SHIFT = 48;
+
+    /** Shortest run of bytes that is passed to the {@link VectorCodec}, if it is available */
+    private static final int VECTOR_LENGTH =
+        (VectorCodec.isAvailable() ? VectorCodec.minimumLength() : Integer.MAX_VALUE);
+
+    private static final byte[] DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int[] DECODE = new int[TABLE_SIZE];
+
+    /** Both ASCII digits of each byte value, most significant digit in the high byte */
+    private static final short[] ENCODE = new short[TABLE_SIZE];
+
+    static {
+        Arrays.fill(DECODE, INVALID);
+
+        for (int i = 0; i < DECIMAL_DIGITS; i++) {
+            DECODE['0' + i] = i;
+        }
+
+        for (int i = 0; i < HEX_LETTERS; i++) {
+            DECODE['A' + i] = DECIMAL_DIGITS + i;
+            DECODE['a' + i] = DECIMAL_DIGITS + i;
+        }
+
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            ENCODE[i] = (short) ((DIGITS[i >> BITS_IN_NIBBLE] << BITS_IN_BYTE) | DIGITS[i & MASK_LSN]);
+        }
+    }
+
+
+    private Hex() {
+    }
+
+
+    /**
+     * Decode a single ASCII hex digit
+     * @param digit     ASCII character. Both upper and lower case hex digits are accepted
+     * @return          Value of the digit in the range 0 to 15, or a negative value if {@code digit} is not hex
+     */
+    static int decodeNibble(byte digit) {
+        return DECODE[digit & MASK_BYTE];
+    }
+
+
+    /**
+     * Decode a pair of ASCII hex digits
+     * @param buffer    ASCII characters
+     * @param index     Index into the buffer of the most significant digit
+     * @return          Value of the byte in the range 0 to 255, or a negative value if either digit is not hex
+     */
+    static int decodeByte(@Nonnull byte[] buffer, int index) {
+        int msn = DECODE[buffer[index] & MASK_BYTE];
+        int lsn = DECODE[buffer[index + 1] & MASK_BYTE];
+
+        return (msn << BITS_IN_NIBBLE) | lsn;
+    }
+
+
+    /**
+     * Encode a byte as a pair of upper case ASCII hex digits
+     * @param buffer    Big endian buffer that the digits are written to
+     * @param value     Value to encode. Only the least significant 8 bits are used
+     */
+    static void encodeByte(@Nonnull ByteBuffer buffer, int value) {
+        buffer.putShort(ENCODE[value & MASK_BYTE]);
+    }
+
+
+    /**
+     * Encode the most significant bytes of a value as big endian pairs of upper case ASCII hex digits
+     * @param buffer    Big endian buffer that the digits are written to
+     * @param value     Value to encode
+     * @param bytes     The number of bytes to write: 1 for a single byte, 2 for a short, 3 or 4 for an address
+     * @return          Sum of all the bytes that were encoded
+     */
+    static int encodeValue(@Nonnull ByteBuffer buffer, int value, int bytes) {
+        int sum = 0;
+        int remaining = bytes;
+
+        while (remaining-- != 0) {
+            int n = (value >> (remaining * BITS_IN_BYTE)) & MASK_BYTE;
+
+            encodeByte(buffer, n);
+            sum += n;
+        }
+
+        return sum;
+    }
+
+
+    /**
+     * Encode a run of bytes as pairs of upper case ASCII hex digits. Bytes are read with absolute gets, or directly
+     * from the backing array of a heap buffer, so the position of {@code data} is not changed
+     * @param buffer    Big endian buffer that the digits are written to
+     * @param data      Buffer that contains the bytes to encode
+     * @param offset    Index into {@code data} of the first byte to encode
+     * @param length    Number of bytes to encode
+     * @return          Sum of all the bytes that were encoded. Only the least significant 8 bits are significant
+     */
+    static int encodeBytes(@Nonnull ByteBuffer buffer, @Nonnull ByteBuffer data, int offset, int length) {
+        int sum = 0;
+
+        if (length >= VECTOR_LENGTH) {
+            sum = VectorCodec.encode(buffer, data, offset, length);
+        } else if (data.hasArray()) {
+            byte[] array = data.array();
+            int start = data.arrayOffset() + offset;
+
+            for (int i = start; i < start + length; i++) {
+                encodeByte(buffer, array[i]);
+                sum += array[i];
+            }
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                byte value = data.get(i);
+
+                encodeByte(buffer, value);
+                sum += value;
+            }
+        }
+
+        return sum;
+    }
+
+
+    /**
+     * Decode a run of pairs of ASCII hex digits. Long runs are decoded by the {@link VectorCodec} if it is
+     * available. Otherwise, where possible, 8 digits are validated and decoded at once by treating them as a single
+     * long (SWAR), and any remaining digits are decoded with the lookup table.
+     * @param source    ASCII characters
+     * @param index     Index into the {@code source} of the most significant digit of the first byte
+     * @param dest      Buffer that the decoded bytes are written to, starting at index 0
+     * @param length    Number of bytes to decode; at most 256
+     * @return          Sum of the decoded bytes, or a negative value if any digit is not hex. Only the least
+     *                  significant 8 bits of the sum are significant
+     */
+    static int decodeBytes(@Nonnull byte[] source, int index, @Nonnull byte[] dest, int length) {
+        int result;
+
+        if (length >= VECTOR_LENGTH) {
+            result = VectorCodec.decode(source, index, dest, length);
+        } else {
+            int words = length / WORD_BYTES;
+            int head = words * WORD_BYTES;
+            int total = (words == 0 ? 0 : decodeWords(source, index, dest, words));
+            int invalid = total;
+            int position = index + (head * DIGITS_IN_BYTE);
+
+            for (int i = head; i < length; i++) {
+                int value = decodeByte(source, position);
+
+                invalid |= value;
+                total += value;
+                dest[i] = (byte) value;
+                position += DIGITS_IN_BYTE;
+            }
+
+            result = (invalid < 0 ? INVALID : total);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Returns how many bytes of a run of {@code length} bytes are passed to the {@link VectorCodec} by
+     * {@link #decodeBytes(byte[], int, byte[], int)} and {@link #encodeBytes(ByteBuffer, ByteBuffer, int, int)}
+     * @param length    Number of bytes in the run
+     * @return how many bytes are decoded or encoded by the vector codec
+     */
+    static int vectorBytes(int length) {
+        return (length >= VECTOR_LENGTH ? length : 0);
+    }
+
+
+    /**
+     * Returns how many bytes of a run of {@code length} bytes are decoded as whole words by
+     * {@link #decodeBytes(byte[], int, byte[], int)}. The rest of the run is decoded with the lookup table
+     * @param length    Number of bytes in the run
+     * @return how many bytes are decoded as whole words
+     */
+    static int wordBytes(int length) {
+        return (length < VECTOR_LENGTH ? (length / WORD_BYTES) * WORD_BYTES : 0);
+    }
+
+
+    /**
+     * Decode groups of 8 ASCII hex digits. Each group is assembled into a big endian long, and all 8 digits are
+     * validated and converted to nibbles together before the nibbles are packed into 4 bytes. The longs are
+     * assembled with shifts, so nothing is allocated for each record.
+     * @param source    ASCII characters
+     * @param index     Index into the {@code source} of the first digit
+     * @param dest      Buffer that the decoded bytes are written to, starting at index 0
+     * @param words     Number of groups of 8 digits to decode; at most 64 so that the sum can not overflow
+     * @return          Sum of the decoded bytes, or a negative value if any digit is not hex
+     */
+    private static int decodeWords(@Nonnull byte[] source, int index, @Nonnull byte[] dest, int words) {
+        long errors = 0;
+        long lanes = 0;
+        int position = index;
+
+        for (int i = 0; i < words; i++) {
+            long digits = readLong(source, position);
+            long folded = digits | LOWER_CASE;
+            long isDigit = (digits + FROM_DIGITS) & ~(digits + ABOVE_DIGITS);
+            long isLetter = (folded + FROM_LETTERS) & ~(folded + ABOVE_LETTERS);
+            long nibbles = (digits & LOW_NIBBLES) + ((isLetter & HIGH_BITS) >>> (Byte.SIZE - 1)) * LETTER_OFFSET;
+            long pairs = ((nibbles >>> BITS_IN_NIBBLE) | nibbles) & BYTE_LANES;
+
+            errors |= (~(isDigit | isLetter) | digits) & HIGH_BITS;
+            lanes += pairs;
+            pairs = (pairs | (pairs >>> BITS_IN_BYTE)) & SHORT_LANES;
+            writeInt(dest, i * WORD_BYTES, (int) (pairs | (pairs >>> Short.SIZE)));
+            position += Long.BYTES;
+        }
+
+        return (errors == 0 ? (int) ((lanes * SUM_LANES) >>> SUM_SHIFT) : INVALID);
+    }
+
+
+    /**
+     * Returns 8 bytes of an array as a big endian long
+     * @param source    Bytes to read
+     * @param index     Index into {@code source} of the most significant byte
+     * @return the bytes as a big endian long
+     */
+    private static long readLong(@Nonnull byte[] source, int index) {
+        long value = 0;
+
+        for (int i = index; i < index + Long.BYTES; i++) {
+            value = (value << BITS_IN_BYTE) | (source[i] & MASK_BYTE);
+        }
+
+        return value;
+    }
+
+
+    /**
+     * Write an int to an array as 4 big endian bytes
+     * @param dest      Array that the bytes are written to
+     * @param index     Index into {@code dest} of the most significant byte
+     * @param value     Value to write
+     */
+    private static void writeInt(@Nonnull byte[] dest, int index, int value) {
+        for (int i = 0; i < Integer.BYTES; i++) {
+            dest[index + i] = (byte) (value >>> ((Integer.BYTES - 1 - i) * BITS_IN_BYTE));
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Byte level, pull based, parser for Intel HEX files. Lines are read and decoded in the same way as
+ * {@link SParser} so that Intel HEX files can be processed by the same loaders, visitors and iterators as
+ * S-Record files.
+ * <p>
+ * Extended segment (02) and extended linear (04) address records are absorbed by the parser and applied to the
+ * address of the data (00) records that follow them, which are presented as {@link SRecord#DATA_32} records with
+ * a 32 bit address. Start segment (03) and start linear (05) address records are presented as
+ * {@link SRecord#START_ADDRESS_32} records; a segment start address is presented as the physical address
+ * {@code CS * 16 + IP}. The end of file (01) record is checked but is not presented.
+ */
+class IntelParser implements RecordParser {
+    private static final int MAX_DATA_SIZE = 255;
+    private static final int DIGITS_IN_BYTE = 2;
+    private static final int MASK_BYTE = 0xff;
+    private static final int MASK_WORD = 0xffff;
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int LINEAR_SHIFT = 16;
+
+    // Indexes into Intel HEX lines
+    private static final int INDEX_COLON = 0;
+    private static final int INDEX_COUNT = 1;
+    private static final int INDEX_ADDRESS = 3;
+    private static final int INDEX_TYPE = 7;
+    private static final int INDEX_DATA = 9;
+
+    private static final int SIZE_MINIMUM = 11;                // ':', count, address, type and checksum
+    private static final int SIZE_BASE = 2;                    // Data in an extended address record
+    private static final int SIZE_START = 4;                   // Data in a start address record
+
+    // Intel HEX record types
+    private static final int TYPE_DATA = 0;
+    private static final int TYPE_EOF = 1;
+    private static final int TYPE_SEGMENT = 2;
+    private static final int TYPE_START_SEGMENT = 3;
+    private static final int TYPE_LINEAR = 4;
+    private static final int TYPE_START_LINEAR = 5;
+
+    private final LineReader reader;
+    private final byte[] data = new byte[MAX_DATA_SIZE];
+    private byte[] line;
+    private int lineStart;
+    private int lineNumber;
+    private boolean hasTerminated = false;
+    private boolean verifyChecksums = true;
+    private long base = 0;
+
+    private SRecord type;
+    private long address;
+    private int offset;
+    private int recordType;
+    private int dataLength;
+    private int sum;
+
+
+    /**
+     * Create a parser that reads lines of ASCII data from a {@code reader}
+     * @param reader        Source of the Intel HEX data
+     */
+    IntelParser(@Nonnull LineReader reader) {
+        this.reader = reader;
+    }
+
+
+    @Override
+    @Nonnull
+    public IntelParser withChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+
+        return this;
+    }
+
+
+    /**
+     * Decode the next data or start address record from the source. Extended address records are applied as they
+     * are read.
+     * @return  {@code true} if a record was decoded or {@code false} if the end of the data has been reached
+     * @throws IOException if the data could not be read
+     * @throws SRecordException if the data is not a valid Intel HEX file
+     */
+    @Override
+    public boolean next() throws IOException {
+        boolean found = false;
+
+        while (!found && reader.next()) {
+            found = parseLine();
+        }
+
+        if (!found && !hasTerminated) {
+            throw new SRecordException("Unexpected EOF");
+        }
+
+        return found;
+    }
+
+
+    @Override
+    @Nonnull
+    public SRecord getType() {
+        return type;
+    }
+
+
+    @Override
+    public long getAddress() {
+        return address;
+    }
+
+
+    @Override
+    @Nonnull
+    public byte[] getData() {
+        return data;
+    }
+
+
+    @Override
+    public int getDataLength() {
+        return dataLength;
+    }
+
+
+    @Override
+    public int getLineNumber() {
+        return reader.getLineNumber();
+    }
+
+
+    @Override
+    public void publish(@Nonnull SVisitor visitor) {
+        if (type == SRecord.DATA_32) {
+            visitor.onData(address, data, 0, dataLength);
+        } else {
+            visitor.onStart(address);
+        }
+    }
+
+
+    /**
+     * Parse a single Intel HEX record. This can be any type of record.
+     * The line is guaranteed to have at least one character
+     * @return {@code true} if the record should be presented to the caller
+     */
+    private boolean parseLine() {
+        line = reader.getLine();
+        lineStart = reader.getStart();
+        lineNumber = reader.getLineNumber();
+
+        int length = reader.getEnd() - lineStart;
+
+        if (length < SIZE_MINIMUM) {
+            throw new SRecordException("Record on line %d has been truncated", lineNumber);
+        }
+
+        int count = decodeByte(INDEX_COUNT);
+        int expectedLength = (count * DIGITS_IN_BYTE) + SIZE_MINIMUM;
+
+        if ((count >= 0) && (length < expectedLength)) {
+            throw new SRecordException("Record on line %d has been truncated", lineNumber);
+        }
+
+        boolean valid = !hasTerminated && (line[lineStart + INDEX_COLON] == ':');
+        valid = valid && (count >= 0) && (length == expectedLength);
+        valid = valid && decodeHeader(count) && decodeData(count);
+        valid = valid && (!verifyChecksums || verifyChecksum(count));
+
+        if (!valid) {
+            throw new SRecordException("Invalid record on line %d", lineNumber);
+        }
+
+        return interpret();
+    }
+
+
+    /**
+     * Decode the address offset and the record type of the current line. The decoded bytes, and the count,
+     * start the running {@link #sum}
+     * @param count         Value of the count field of the current line
+     * @return {@code true} only if the fields are valid hex
+     */
+    private boolean decodeHeader(int count) {
+        int high = decodeByte(INDEX_ADDRESS);
+        int low = decodeByte(INDEX_ADDRESS + DIGITS_IN_BYTE);
+
+        recordType = decodeByte(INDEX_TYPE);
+        offset = (high << Byte.SIZE) | low;
+        sum = count + high + low + recordType;
+
+        return ((high | low | recordType) >= 0);
+    }
+
+
+    /**
+     * Decode the data field of the current line. The decoded bytes are added to the running {@link #sum}
+     * @param size          Number of bytes in the data field
+     * @return {@code true} only if the data is valid hex
+     */
+    private boolean decodeData(int size) {
+        int total = Hex.decodeBytes(line, lineStart + INDEX_DATA, data, size);
+
+        dataLength = size;
+        sum += total;
+
+        return (total >= 0);
+    }
+
+
+    /**
+     * Verify the checksum of the current line. The checksum is the two's complement of the sum of all the other
+     * bytes in the record, which have already been added to {@link #sum} as they were decoded.
+     * @param count         Value of the count field of the current line
+     * @return {@code true} only if the checksum is valid
+     */
+    private boolean verifyChecksum(int count) {
+        int checksum = decodeByte(INDEX_DATA + (count * DIGITS_IN_BYTE));
+
+        return (checksum >= 0) && (((sum + checksum) & MASK_BYTE) == 0);
+    }
+
+
+    /**
+     * Apply the decoded record to the state of the parser
+     * @return {@code true} if the record should be presented to the caller
+     */
+    private boolean interpret() {
+        boolean present = false;
+
+        switch (recordType) {
+            case TYPE_DATA:
+                type = SRecord.DATA_32;
+                address = base + offset;
+                present = true;
+                break;
+
+            case TYPE_EOF:
+                checkSize(0);
+                hasTerminated = true;
+                break;
+
+            case TYPE_SEGMENT:
+                checkSize(SIZE_BASE);
+                base = dataValue() << SEGMENT_SHIFT;
+                break;
+
+            case TYPE_LINEAR:
+                checkSize(SIZE_BASE);
+                base = dataValue() << LINEAR_SHIFT;
+                break;
+
+            case TYPE_START_SEGMENT:
+                checkSize(SIZE_START);
+                present = start(((dataValue() >>> LINEAR_SHIFT) << SEGMENT_SHIFT) + (dataValue() & MASK_WORD));
+                break;
+
+            case TYPE_START_LINEAR:
+                checkSize(SIZE_START);
+                present = start(dataValue());
+                break;
+
+            default:
+                throw new SRecordException("Invalid Intel HEX record type %d on line %d", recordType, lineNumber);
+        }
+
+        return present;
+    }
+
+
+    private boolean start(long value) {
+        type = SRecord.START_ADDRESS_32;
+        address = value;
+        dataLength = 0;
+
+        return true;
+    }
+
+
+    private void checkSize(int expected) {
+        if (dataLength != expected) {
+            throw new SRecordException("Invalid record on line %d", lineNumber);
+        }
+    }
+
+
+    /**
+     * Returns the data field of the current line as a big endian unsigned value
+     * @return the data field of the current line as a big endian unsigned value
+     */
+    private long dataValue() {
+        long value = 0;
+
+        for (int i = 0; i < dataLength; i++) {
+            value = (value << Byte.SIZE) | (data[i] & MASK_BYTE);
+        }
+
+        return value;
+    }
+
+
+    private int decodeByte(int index) {
+        return Hex.decodeByte(line, lineStart + index);
+    }
+}
@@ -0,0 +1,324 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Write an Intel HEX file. Records are encoded as data is added, so files of any size are written in constant
+ * memory. Data records never cross a 64 KiB boundary; an extended linear address (04) record, or an extended segment
+ * address (02) record if segment addressing is selected, is written whenever the upper part of the address changes.
+ * The start address and end of file records are written when the writer is closed.
+ */
+public class IntelWriter implements AutoCloseable {
+    private static final int MAX_DATA_SIZE = 255;
+    private static final int DEFAULT_RECORD_SIZE = 16;
+    private static final long WORD_SIZE = 0x10000;
+    private static final long MASK_WORD = 0xffff;
+    private static final long SEGMENT_LIMIT = 0x100000;
+    private static final long LINEAR_LIMIT = 0x100000000L;
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int LINEAR_SHIFT = 16;
+    private static final int SIZE_BASE = 2;
+    private static final int SIZE_START = 4;
+    private static final byte RECORD_START = ':';
+    private static final long NO_ADDRESS = -1;
+
+    // Intel HEX record types
+    private static final int TYPE_DATA = 0;
+    private static final int TYPE_EOF = 1;
+    private static final int TYPE_SEGMENT = 2;
+    private static final int TYPE_START_SEGMENT = 3;
+    private static final int TYPE_LINEAR = 4;
+    private static final int TYPE_START_LINEAR = 5;
+
+    /** Largest possible encoded line: ':', count, offset, type, data, checksum and the line separator */
+    private static final int MAX_LINE_SIZE =
+        1 + 2 * (1 + 2 + 1 + MAX_DATA_SIZE + 1) + RecordOutput.LINE_SEPARATOR.length;
+
+    private final RecordOutput output;
+    private final ByteBuffer field;
+    private int recordSize = DEFAULT_RECORD_SIZE;
+    private boolean segmentAddressing = false;
+    private long startAddress = NO_ADDRESS;
+    private long base = 0;
+
+
+    /**
+     * Create a writer for Intel HEX files. The file is created immediately. By default the file has 16 data bytes
+     * in each record and uses extended linear addresses.
+     * @param destination       File that will be created or overwritten.
+     * @throws SRecordException if the file could not be created
+     */
+    public IntelWriter(@Nonnull File destination) {
+        this.output = new RecordOutput(destination, "Intel HEX");
+        this.field = ByteBuffer.allocate(Integer.BYTES);
+
+        output.write(output::open);
+    }
+
+
+    /**
+     * Set the maximum number of data bytes in each data record. Data that is added in larger blocks is split
+     * into consecutive records of this size. The default is 16. This should be set before any data is added.
+     * @param size          Maximum number of data bytes in each record; typically 16 or 32, and at most 255
+     * @throws IllegalArgumentException if {@code size} is not in the range 1 to 255
+     */
+    public void setRecordSize(int size) {
+        if ((size < 1) || (size > MAX_DATA_SIZE)) {
+            throw new IllegalArgumentException("Invalid record size " + size);
+        }
+
+        recordSize = size;
+    }
+
+
+    /**
+     * Use extended segment address (02) and start segment address (03) records rather than extended linear address
+     * (04) and start linear address (05) records. Segment addressing is limited to the first 1 MiB of memory.
+     * This should be set before any data is added.
+     * @param segmentAddressing     {@code true} if segment addresses should be written
+     * @throws IllegalArgumentException if segment addressing is selected and a start address outside the first
+     *              1 MiB of memory has already been set
+     */
+    public void setSegmentAddressing(boolean segmentAddressing) {
+        if (segmentAddressing && (startAddress != NO_ADDRESS)) {
+            RecordOutput.checkStartAddress(startAddress, SEGMENT_LIMIT);
+        }
+
+        this.segmentAddressing = segmentAddressing;
+    }
+
+
+    /**
+     * Set the start address that is written when the writer is closed. By default no start address is written
+     * @param address       Start address of the program
+     * @throws IllegalArgumentException if segment addressing is used and the start address is not in the first
+     *              1 MiB of memory
+     */
+    public void setStartAddress(int address) {
+        long value = Integer.toUnsignedLong(address);
+
+        RecordOutput.checkStartAddress(value, (segmentAddressing ? SEGMENT_LIMIT : LINEAR_LIMIT));
+
+        this.startAddress = value;
+    }
+
+
+    /**
+     * Add data to the Intel HEX file. If there is more data than will fit in a single record then it is split
+     * into as many records as required. Multiple blocks of data can be added
+     * @param address       Start address of the data
+     * @param bytes         Data bytes
+     * @param start         Index of first byte in {@code bytes} to be added
+     * @param length        Number of bytes to be added
+     * @throws ArrayIndexOutOfBoundsException if {@code start < 0} or {@code start + length > bytes.length}
+     * @throws IllegalArgumentException if {@code length < 0}, if the data extends past the largest 32 bit address
+     *              or if segment addressing is used and the data is not in the first 1 MiB of memory
+     */
+    public void withData(int address, @Nonnull byte[] bytes, int start, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        } else if ((start < 0) || (start + length > bytes.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + start + " + " + length);
+        }
+
+        addData(Integer.toUnsignedLong(address), ByteBuffer.wrap(bytes), start, length);
+    }
+
+
+    /**
+     * Add the remaining bytes in a buffer to the Intel HEX file. The buffer may be a heap, direct or memory mapped
+     * buffer, and the data is encoded directly from it before this method returns. The position and limit of the
+     * buffer are not changed.
+     * @param address       Start address of the data
+     * @param bytes         Buffer that contains the data between its position and its limit
+     * @throws IllegalArgumentException if the data extends past the largest 32 bit address or if segment addressing
+     *              is used and the data is not in the first 1 MiB of memory
+     */
+    public void withData(int address, @Nonnull ByteBuffer bytes) {
+        addData(Integer.toUnsignedLong(address), bytes, bytes.position(), bytes.remaining());
+    }
+
+
+    /**
+     * Add the whole of a raw binary file to the Intel HEX file.
+     * @param address       Address of the first byte of the file
+     * @param source        Binary file to add
+     * @throws SRecordException if the file could not be read
+     * @see #withBinary(int, File, long, long)
+     */
+    public void withBinary(int address, @Nonnull File source) {
+        withBinary(address, source, 0, source.length());
+    }
+
+
+    /**
+     * Add a region of a raw binary file to the Intel HEX file. The file is memory mapped in chunks, and each chunk
+     * is added as if by {@link #withData(int, ByteBuffer)}, so files of any size are converted in constant memory.
+     * @param address       Address of the first byte of the region
+     * @param source        Binary file to add
+     * @param offset        Offset into the file of the first byte to add
+     * @param length        Number of bytes to add
+     * @throws IllegalArgumentException if the region is not within the file, or if it can not be written with the
+     *              selected addressing
+     * @throws SRecordException if the file could not be read
+     */
+    public void withBinary(int address, @Nonnull File source, long offset, long length) {
+        checkRange(Integer.toUnsignedLong(address), length);
+
+        RecordOutput.readBinary(source, offset, length, recordSize,
+            (position, chunk) -> withData((int) (address + position), chunk));
+    }
+
+
+    /**
+     * Returns a visitor that adds each record it is passed to this writer; data is added with
+     * {@link #withData(int, byte[], int, int)} and the start address with {@link #setStartAddress(int)}. Headers
+     * can not be represented in Intel HEX so they are ignored. This allows an S-Record file to be converted in a
+     * single pass with {@link SLoader#visit(SVisitor)}. Only the least significant 32 bits of each address are used.
+     * @return a visitor that adds records to this writer
+     */
+    @Nonnull
+    public SVisitor asVisitor() {
+        return new SVisitor() {
+            @Override
+            public void onData(long address, @Nonnull byte[] buffer, int offset, int length) {
+                withData((int) address, buffer, offset, length);
+            }
+
+            @Override
+            public void onStart(long address) {
+                setStartAddress((int) address);
+            }
+        };
+    }
+
+
+    /**
+     * Write the start address and end of file records, and close the file.
+     * Closing a writer that has already been closed has no effect.
+     * @throws SRecordException if the file could not be written
+     */
+    @Override
+    public void close() {
+        output.close(this::finish);
+    }
+
+
+    private void finish() throws IOException {
+        if (startAddress != NO_ADDRESS) {
+            writeStartAddress();
+        }
+
+        writeLine(TYPE_EOF, 0, RecordOutput.EMPTY, 0, 0);
+    }
+
+
+    /**
+     * Encode data as one or more data records of at most {@link #recordSize} bytes that do not cross a 64 KiB
+     * boundary. An extended address record is written before any record that has a different upper address
+     * @param address       Address of the first byte of data
+     * @param data          Buffer that contains the data
+     * @param offset        Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     */
+    private void addData(long address, @Nonnull ByteBuffer data, int offset, int length) {
+        checkRange(address, length);
+
+        output.write(() -> writeData(address, data, offset, length));
+    }
+
+
+    private void writeData(long address, @Nonnull ByteBuffer data, int offset, int length) throws IOException {
+        int position = 0;
+
+        while (position < length) {
+            long current = address + position;
+            long upper = current & ~MASK_WORD;
+            int size = (int) Math.min(WORD_SIZE - (current & MASK_WORD), Math.min(recordSize, length - position));
+
+            if (upper != base) {
+                writeBase(upper);
+            }
+
+            writeLine(TYPE_DATA, (int) (current & MASK_WORD), data, offset + position, size);
+            position += size;
+        }
+    }
+
+
+    /**
+     * Check that data can be written with the selected addressing
+     * @param address       Address of the first byte of data
+     * @param length        Number of bytes of data
+     * @throws IllegalArgumentException if the data extends past the largest address
+     */
+    private void checkRange(long address, long length) {
+        RecordOutput.checkRange(address, length, (segmentAddressing ? SEGMENT_LIMIT : LINEAR_LIMIT));
+    }
+
+
+    private void writeBase(long upper) throws IOException {
+        if (segmentAddressing) {
+            writeValue(TYPE_SEGMENT, upper >>> SEGMENT_SHIFT, SIZE_BASE);
+        } else {
+            writeValue(TYPE_LINEAR, upper >>> LINEAR_SHIFT, SIZE_BASE);
+        }
+
+        base = upper;
+    }
+
+
+    private void writeStartAddress() throws IOException {
+        if (segmentAddressing) {
+            long segment = (startAddress & ~MASK_WORD) >>> SEGMENT_SHIFT;
+
+            writeValue(TYPE_START_SEGMENT, (segment << LINEAR_SHIFT) | (startAddress & MASK_WORD), SIZE_START);
+        } else {
+            writeValue(TYPE_START_LINEAR, startAddress, SIZE_START);
+        }
+    }
+
+
+    /**
+     * Write a record that has a big endian value as its data field
+     * @param type          Type of the record
+     * @param value         Value to write
+     * @param bytes         Number of bytes in the data field
+     * @throws IOException if the file could not be written
+     */
+    private void writeValue(int type, long value, int bytes) throws IOException {
+        field.putInt(0, (int) value);
+
+        writeLine(type, 0, field, Integer.BYTES - bytes, bytes);
+    }
+
+
+    /**
+     * Encode a record into the output buffer. The buffer is flushed to the file when it is full
+     * @param type          Type of the record
+     * @param offset        Value of the 16 bit address offset field
+     * @param data          Buffer that contains the data field
+     * @param start         Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     * @throws IOException if the file could not be written
+     */
+    private void writeLine(int type, int offset, @Nonnull ByteBuffer data, int start, int length)
+            throws IOException {
+        ByteBuffer buffer = output.reserve(MAX_LINE_SIZE);
+        int checksum = 0;
+
+        buffer.put(RECORD_START);
+        checksum += Hex.encodeValue(buffer, length, 1);
+        checksum += Hex.encodeValue(buffer, offset, SIZE_BASE);
+        checksum += Hex.encodeValue(buffer, type, 1);
+        checksum += Hex.encodeBytes(buffer, data, start, length);
+
+        Hex.encodeValue(buffer, -checksum, 1);
+        buffer.put(RecordOutput.LINE_SEPARATOR);
+    }
+}
@@ -0,0 +1,335 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Splits blocks of ASCII data into lines for the record parsers. Each line is copied into a reusable buffer
+ * with any leading and trailing white space and control characters removed, so no objects are created for
+ * individual lines. Blank lines are skipped.
+ */
+class LineReader {
+    /** Supplier of consecutive blocks of ASCII data */
+    @FunctionalInterface
+    interface Source {
+        /**
+         * Returns the next block of data to parse
+         * @return the next block of data to parse, or {@code null} if there is no more data
+         * @throws IOException if the data could not be read
+         */
+        @Nullable
+        ByteBuffer next() throws IOException;
+    }
+
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAPPED_WINDOW_SIZE = 1L << 30;
+    private static final int INITIAL_LINE_SIZE = 128;
+    private static final char NON_ASCII = 0x80;
+    private static final int MASK_BYTE = 0xff;
+
+    private final Source source;
+    private ByteBuffer buffer;
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber = 0;
+    private boolean skipLineFeed = false;
+    private long lineOffset = 0;
+    private long bytesRead = 0;
+    private long ioNanos = 0;
+
+
+    /**
+     * Create a reader for the ASCII data from a {@code source}
+     * @param source        Source of the ASCII data
+     */
+    LineReader(@Nonnull Source source) {
+        this.source = source;
+        this.buffer = ByteBuffer.allocate(0);
+    }
+
+
+    /**
+     * Create a reader that copies ASCII data from a {@code channel} into a reusable buffer
+     * @param channel       Source of the ASCII data. The caller is responsible for closing the channel
+     * @return a reader for the data in the {@code channel}
+     */
+    @Nonnull
+    static LineReader forChannel(@Nonnull ReadableByteChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        return new LineReader(() -> {
+            int read = 0;
+
+            buffer.clear();
+
+            while (read == 0) {
+                read = channel.read(buffer);
+            }
+
+            buffer.flip();
+
+            return (read > 0 ? buffer : null);
+        });
+    }
+
+
+    /**
+     * Create a reader that reads ASCII characters from a {@code reader}. Characters that are not ASCII are
+     * replaced, so they will be reported as invalid records
+     * @param reader        Source of the ASCII data. The caller is responsible for closing the reader
+     * @return a reader for the data in the {@code reader}
+     */
+    @Nonnull
+    static LineReader forReader(@Nonnull Reader reader) {
+        char[] chars = new char[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        return new LineReader(() -> {
+            int read = 0;
+
+            while (read == 0) {
+                read = reader.read(chars);
+            }
+
+            buffer.clear();
+
+            for (int i = 0; i < read; i++) {
+                char next = chars[i];
+
+                buffer.put(next < NON_ASCII ? (byte) next : (byte) '?');
+            }
+
+            buffer.flip();
+
+            return (read > 0 ? buffer : null);
+        });
+    }
+
+
+    /**
+     * Create a reader that reads ASCII data directly from a memory mapped {@code file}.
+     * Large files are mapped in windows so that they are not limited by the maximum size of a single buffer
+     * @param file          Source of the ASCII data. The caller is responsible for closing the channel
+     * @return a reader for the data in the {@code file}
+     * @throws IOException if the size of the file could not be read
+     */
+    @Nonnull
+    static LineReader forMappedFile(@Nonnull FileChannel file) throws IOException {
+        return forMappedFile(file, 0, file.size());
+    }
+
+
+    /**
+     * Create a reader that reads ASCII data directly from a memory mapped region of a {@code file}.
+     * @param file          Source of the ASCII data. The caller is responsible for closing the channel
+     * @param start         Offset into the file of the first byte to read
+     * @param end           Offset into the file of the first byte after the region to read
+     * @return a reader for the data in the {@code file}
+     */
+    @Nonnull
+    static LineReader forMappedFile(@Nonnull FileChannel file, long start, long end) {
+        long[] position = { start };
+
+        return new LineReader(() -> {
+            long offset = position[0];
+            ByteBuffer window = null;
+
+            if (offset < end) {
+                long length = Math.min(MAPPED_WINDOW_SIZE, end - offset);
+
+                window = file.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                position[0] += length;
+            }
+
+            return window;
+        });
+    }
+
+
+    /**
+     * Set the number of the line before the next line, for sources that do not start at the beginning of a file
+     * @param lineNumber    Number of the line before the next line
+     */
+    void setLineNumber(int lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+
+    /**
+     * Read the next line that is not blank
+     * @return {@code true} if a line was read or {@code false} if the end of the data has been reached
+     * @throws IOException if the data could not be read
+     */
+    boolean next() throws IOException {
+        boolean found = false;
+
+        while (!found && readLine()) {
+            trim();
+            found = (lineStart != lineEnd);
+        }
+
+        return found;
+    }
+
+
+    /**
+     * Returns the buffer that holds the current line. This buffer is reused and is only valid until the next call
+     * to {@link #next()}
+     * @return the buffer that holds the current line
+     */
+    @Nonnull
+    byte[] getLine() {
+        return line;
+    }
+
+
+    /**
+     * Returns the index into {@link #getLine()} of the first character of the current line
+     * @return the index of the first character of the current line
+     */
+    int getStart() {
+        return lineStart;
+    }
+
+
+    /**
+     * Returns the index into {@link #getLine()} after the last character of the current line
+     * @return the index after the last character of the current line
+     */
+    int getEnd() {
+        return lineEnd;
+    }
+
+
+    /**
+     * Returns the line number of the current line
+     * @return the line number of the current line
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+
+    /**
+     * Returns the offset of the first byte of the current line from the start of the source. Reading from this
+     * offset with a new reader, and {@link #setLineNumber(int)} set to one less than the current line number, will
+     * read the current line again
+     * @return the offset of the first byte of the current line
+     */
+    long getLineOffset() {
+        return lineOffset;
+    }
+
+
+    /**
+     * Returns the number of bytes that have been read from the source. For a memory mapped file this is the size of
+     * the regions that have been mapped
+     * @return the number of bytes that have been read from the source
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+
+    /**
+     * Returns the time spent waiting for the source to supply data, in nanoseconds. This is measured once per
+     * block of data, so it does not add to the cost of each line
+     * @return the time spent waiting for the source
+     */
+    long getIoNanos() {
+        return ioNanos;
+    }
+
+
+    /**
+     * Copy the next line of ASCII text into {@link #line}. Lines are terminated by CR, LF or CR LF
+     * @return {@code true} if a line was read or {@code false} if the end of the data has been reached
+     * @throws IOException if the data could not be read
+     */
+    private boolean readLine() throws IOException {
+        boolean more = true;
+        boolean found = false;
+        int length = 0;
+
+        lineOffset = bytesRead - buffer.remaining();
+
+        while (!found && more) {
+            if (!buffer.hasRemaining()) {
+                more = fill();
+                found = !more && (length != 0);
+            } else {
+                byte next = buffer.get();
+
+                if (next == '\r') {
+                    skipLineFeed = true;
+                    found = true;
+                } else if (next == '\n') {
+                    found = !skipLineFeed;
+                    lineOffset += (found ? 0 : 1);                  // LF of a CR LF that ended the last line
+                    skipLineFeed = false;
+                } else {
+                    skipLineFeed = false;
+                    length = append(length, next);
+                }
+            }
+        }
+
+        if (found) {
+            lineNumber++;
+            lineStart = 0;
+            lineEnd = length;
+        }
+
+        return found;
+    }
+
+
+    private int append(int length, byte next) {
+        if (length == line.length) {
+            line = Arrays.copyOf(line, length * 2);
+        }
+
+        line[length] = next;
+
+        return length + 1;
+    }
+
+
+    private boolean fill() throws IOException {
+        long started = System.nanoTime();
+        ByteBuffer next = source.next();
+
+        ioNanos += System.nanoTime() - started;
+
+        if (next != null) {
+            buffer = next;
+            bytesRead += next.remaining();
+        }
+
+        return (next != null);
+    }
+
+
+    /**
+     * Remove leading and trailing white space and control characters from the current line
+     */
+    private void trim() {
+        while ((lineStart != lineEnd) && ((line[lineStart] & MASK_BYTE) <= ' ')) {
+            lineStart++;
+        }
+
+        while ((lineStart != lineEnd) && ((line[lineEnd - 1] & MASK_BYTE) <= ' ')) {
+            lineEnd--;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Buffered output for the writers of hex record files. Records are encoded into a direct buffer that is written
+ * to the file whenever it is full. If writing fails then the file is closed and the failure is reported as an
+ * {@link SRecordException}. Closing the output a second time has no effect.
+ */
+class RecordOutput {
+    /** An action that writes to the file */
+    @FunctionalInterface
+    interface IOAction {
+        /**
+         * Write to the file
+         * @throws IOException if the file could not be written
+         */
+        void run() throws IOException;
+    }
+
+
+    /** Consumer of the memory mapped chunks of a binary file */
+    @FunctionalInterface
+    interface ChunkConsumer {
+        /**
+         * Process a chunk of a binary file
+         * @param position      Offset of the chunk from the start of the region that is being read
+         * @param chunk         The mapped bytes of the chunk
+         */
+        void accept(long position, @Nonnull ByteBuffer chunk);
+    }
+
+
+    /** Separator written at the end of each record */
+    static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /** Empty data field */
+    static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAPPED_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final File destination;
+    private final String format;
+    private final ByteBuffer buffer;
+    private FileChannel channel = null;
+    private SMetrics metrics = null;
+    private boolean closed = false;
+
+
+    /**
+     * Constructor. The file is not created until {@link #open()} is called
+     * @param destination   File that will be created or overwritten
+     * @param format        Name of the file format, used in error messages
+     */
+    RecordOutput(@Nonnull File destination, @Nonnull String format) {
+        this.destination = destination;
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+
+    /**
+     * Start collecting metrics, if they are needed and are not already being collected
+     * @param needed        {@code true} if metrics are needed
+     */
+    void measure(boolean needed) {
+        if (needed && (metrics == null)) {
+            metrics = new SMetrics(false, false);
+        }
+    }
+
+
+    /**
+     * Returns the metrics for the output
+     * @return the metrics for the output, or {@code null} if they are not being collected
+     */
+    @Nullable
+    SMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     * Create the file, if it has not already been created
+     * @throws IOException if the file could not be created
+     */
+    void open() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(destination.toPath(),
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+        }
+    }
+
+
+    /**
+     * Write records to the file. If writing fails then the file is closed
+     * @param action        Writes some records
+     * @throws SRecordException if the file could not be written
+     */
+    void write(@Nonnull IOAction action) {
+        long started = (metrics == null ? 0 : System.nanoTime());
+
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            if (metrics != null) {
+                metrics.addElapsed(System.nanoTime() - started);
+            }
+        }
+    }
+
+
+    /**
+     * Returns {@code true} if the output has been closed
+     * @return {@code true} if the output has been closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+
+    /**
+     * Write the last records, flush the buffer and close the file. The file is created first if it has not
+     * already been created. The file is closed even if the last records could not be written. Closing the output a
+     * second time has no effect
+     * @param finish        Writes the last records
+     * @throws SRecordException if the file could not be written
+     */
+    void close(@Nonnull IOAction finish) {
+        if (!closed) {
+            Throwable failure = null;
+
+            closed = true;
+
+            try {
+                write(() -> {
+                    open();
+                    finish.run();
+                    flush();
+                });
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                release(failure);
+            }
+        }
+    }
+
+
+    /**
+     * Close the file, if it has been created
+     * @param failure       The exception that is being thrown, or {@code null} if the records were written
+     * @throws SRecordException if the file could not be closed and no other exception is being thrown
+     */
+    private void release(@Nullable Throwable failure) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    throw failed(e);
+                }
+
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the output buffer, after flushing it to the file if it does not have space for a line
+     * @param lineSize      Largest number of bytes in the line that will be encoded
+     * @return the output buffer
+     * @throws IOException if the file could not be written
+     */
+    @Nonnull
+    ByteBuffer reserve(int lineSize) throws IOException {
+        if (buffer.remaining() < lineSize) {
+            flush();
+        }
+
+        return buffer;
+    }
+
+
+    /**
+     * Write the content of the output buffer to the file
+     * @throws IOException if the file could not be written
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        writeBuffer(buffer);
+        buffer.clear();
+    }
+
+
+    /**
+     * Write encoded records directly to the file. The output buffer must be flushed first
+     * @param source        Buffer that contains the encoded records between its position and limit
+     * @throws IOException if the file could not be written
+     */
+    void writeBuffer(@Nonnull ByteBuffer source) throws IOException {
+        long started = System.nanoTime();
+        int length = source.remaining();
+
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+
+        if (metrics != null) {
+            metrics.addTransfer(length, System.nanoTime() - started);
+        }
+    }
+
+
+    /**
+     * Close the file after an I/O error
+     * @param cause         The I/O error
+     * @return the exception to throw
+     */
+    @Nonnull
+    private SRecordException failed(@Nonnull IOException cause) {
+        SRecordException error =
+            new SRecordException("Failed to write " + format + " file " + destination.getAbsolutePath(), cause);
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                error.addSuppressed(suppressed);
+            }
+        }
+
+        return error;
+    }
+
+
+    /**
+     * Check that a block of data fits in the range of addresses that a file can hold, so that splitting it into
+     * records never wraps an address back to 0
+     * @param address       Address of the first byte of data
+     * @param length        Number of bytes of data
+     * @param limit         Number of addresses that the file can hold
+     * @throws IllegalArgumentException if the data extends past the largest address
+     */
+    static void checkRange(long address, long length, long limit) {
+        if ((address >= limit) || (length > limit - address)) {
+            throw new IllegalArgumentException(
+                String.format("0x%x bytes at 0x%x extends past the end of the address range", length, address));
+        }
+    }
+
+
+    /**
+     * Check that a start address is in the range of addresses that a file can hold, so that it is not truncated
+     * when it is written
+     * @param address       Start address
+     * @param limit         Number of addresses that the file can hold
+     * @throws IllegalArgumentException if the start address is past the largest address
+     */
+    static void checkStartAddress(long address, long limit) {
+        if (address >= limit) {
+            throw new IllegalArgumentException(
+                String.format("Start address 0x%x is past the end of the address range", address));
+        }
+    }
+
+
+    /**
+     * Memory map a region of a binary file in chunks. Each chunk is a multiple of {@code alignment} bytes, except
+     * for the last, so data that is split into records of that size is split on the same boundaries as if the
+     * whole region had been mapped at once.
+     * @param source        Binary file to read
+     * @param offset        Offset into the file of the first byte to read
+     * @param length        Number of bytes to read
+     * @param alignment     Number of bytes that each chunk is a multiple of
+     * @param consumer      Consumer that is passed each chunk in turn
+     * @throws IllegalArgumentException if the region is not within the file
+     * @throws SRecordException if the file could not be read
+     */
+    static void readBinary(@Nonnull File source,
+                           long offset,
+                           long length,
+                           int alignment,
+                           @Nonnull ChunkConsumer consumer) {
+        try (
+            FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ)
+        ) {
+            if ((offset < 0) || (length < 0) || (offset + length > input.size())) {
+                throw new IllegalArgumentException("Invalid region " + offset + " + " + length + " of " + source);
+            }
+
+            long chunkSize = (MAPPED_CHUNK_SIZE / alignment) * alignment;
+            long position = 0;
+
+            while (position < length) {
+                long size = Math.min(chunkSize, length - position);
+
+                consumer.accept(position, input.map(FileChannel.MapMode.READ_ONLY, offset + position, size));
+                position += size;
+            }
+        } catch (IOException e) {
+            throw new SRecordException("Failed to read binary file " + source.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Byte level, pull based, parser for a file of hex records. Each call to {@link #next()} decodes one record; the
+ * decoded values remain valid until the next call. Records are described by the equivalent {@link SRecord} type.
+ */
+interface RecordParser {
+    /**
+     * Configure this parser to skip checksum verification. This should only be used for trusted data that has
+     * already been validated; all other checks are still made.
+     * @param verifyChecksums   {@code false} if checksums should not be verified
+     * @return this parser
+     */
+    @Nonnull
+    RecordParser withChecksums(boolean verifyChecksums);
+
+
+    /**
+     * Decode the next record from the source.
+     * @return  {@code true} if a record was decoded or {@code false} if the end of the data has been reached
+     * @throws IOException if the data could not be read
+     * @throws SRecordException if the data is not valid
+     */
+    boolean next() throws IOException;
+
+
+    /**
+     * Returns the type of the last decoded record
+     * @return the type of the last decoded record
+     */
+    @Nonnull
+    SRecord getType();
+
+
+    /**
+     * Returns the address field of the last decoded record
+     * @return the address field of the last decoded record
+     */
+    long getAddress();
+
+
+    /**
+     * Returns the data field of the last decoded record. This buffer is reused by the parser and is only valid
+     * until the next call to {@link #next()}. Only the first {@link #getDataLength()} bytes are used.
+     * @return the data field of the last decoded record.
+     */
+    @Nonnull
+    byte[] getData();
+
+
+    /**
+     * Returns the number of bytes in the data field of the last decoded record
+     * @return the number of bytes in the data field of the last decoded record
+     */
+    int getDataLength();
+
+
+    /**
+     * Returns the line number of the last decoded record
+     * @return the line number of the last decoded record
+     */
+    int getLineNumber();
+
+
+    /**
+     * Pass the last decoded record to the {@code visitor}
+     * @param visitor       Visitor to notify
+     */
+    void publish(@Nonnull SVisitor visitor);
+}
@@ -0,0 +1,302 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Cache of loaded files, so that repeated loads of the same file only need to read its attributes. A cached file is
+ * reused while its size, last modified time and file key (the inode on most file systems) are unchanged; a file that
+ * is rewritten in place within the resolution of the file system clock, without changing size, is not detected.
+ * The cache is bounded by the number of bytes of decoded data that it holds, and the least recently used files are
+ * evicted first. SReaders are not changed once they are loaded, so the same instance is shared by every caller.
+ * <p>
+ * The cache is thread safe. Files are loaded without holding a lock, so if two threads miss the same file at the
+ * same time it is loaded twice and the last to finish is kept.
+ * @see SLoader#withCache(SCache)
+ */
+public class SCache {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+
+    /** Cached SReader, the path of the file and the attributes of the file when it was loaded */
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final Object fileKey;
+        private final long bytes;
+        private final SReader strong;
+        private final SoftReference<SReader> soft;
+
+        Entry(@Nonnull String path,
+              @Nonnull BasicFileAttributes attributes,
+              @Nonnull SReader reader,
+              boolean softReference) {
+            this.path = path;
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            this.bytes = reader.getImage().size();
+            this.strong = (softReference ? null : reader);
+            this.soft = (softReference ? new SoftReference<>(reader) : null);
+        }
+
+        @Nullable
+        SReader get() {
+            return (soft == null ? strong : soft.get());
+        }
+
+        boolean matches(@Nonnull BasicFileAttributes attributes) {
+            return (size == attributes.size()) &&
+                (modified == attributes.lastModifiedTime().toMillis()) &&
+                Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private boolean softReferences = false;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+
+    /**
+     * Create an empty cache
+     * @param maxBytes      Largest number of bytes of decoded data to hold. A file with more data than this is
+     *                      loaded but not cached
+     * @throws IllegalArgumentException if {@code maxBytes} is negative
+     */
+    public SCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Invalid cache size " + maxBytes);
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * Hold cached files through soft references, so the garbage collector can reclaim them before the JVM runs out
+     * of memory. Reclaimed files are loaded again when they are next requested. This only applies to files that
+     * are added to the cache after this method is called.
+     * @return this cache
+     */
+    @Nonnull
+    public synchronized SCache withSoftReferences() {
+        this.softReferences = true;
+
+        return this;
+    }
+
+
+    /**
+     * Returns the cached SReader for a file, loading it with the default settings if it is not in the cache or
+     * has changed
+     * @param source        File to read
+     * @return SReader containing data from the {@code source} file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    @Nonnull
+    public SReader load(@Nonnull File source) {
+        return new SLoader(source).withCache(this).load();
+    }
+
+
+    /**
+     * Returns the cached SReader for a file, loading it with the default settings if it is not in the cache or
+     * has changed
+     * @param source        File to read
+     * @return SReader containing data from the {@code source} file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    @Nonnull
+    public SReader load(@Nonnull String source) {
+        return new SLoader(source).withCache(this).load();
+    }
+
+
+    /**
+     * Remove every cached copy of a file, whatever settings it was loaded with
+     * @param source        File to remove
+     */
+    public synchronized void invalidate(@Nonnull File source) {
+        String path = source.toPath().toAbsolutePath().normalize().toString();
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry next = iterator.next();
+
+            if (next.path.equals(path)) {
+                bytes -= next.bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Remove all files from the cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+
+    /**
+     * Returns the number of files in the cache, including any that have been reclaimed by the garbage collector
+     * but not yet removed
+     * @return the number of files in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Returns the number of bytes of decoded data held by the cache
+     * @return the number of bytes of decoded data held by the cache
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+
+    /**
+     * Returns the number of loads that were answered from the cache
+     * @return the number of loads that were answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+
+    /**
+     * Returns the number of loads that had to read the file
+     * @return the number of loads that had to read the file
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    /**
+     * Returns the cached SReader for the file described by the {@code loader}, or load it. Files that are loaded
+     * with settings that change the result, such as the fill byte, are cached separately.
+     * @param loader        Description of the file to load and how to load it
+     * @return SReader containing data from the source file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    @Nonnull
+    SReader load(@Nonnull SLoader loader) {
+        Path path = Paths.get(loader.getSource()).toAbsolutePath().normalize();
+        String key = key(path.toString(), loader.getSettings());
+        BasicFileAttributes attributes = attributes(path, loader.getSource());
+        SReader reader = find(key, attributes);
+
+        if (reader == null) {
+            reader = loader.read();
+            add(key, path.toString(), attributes, reader);
+        }
+
+        return reader;
+    }
+
+
+    @Nonnull
+    private static String key(@Nonnull String path, @Nonnull String settings) {
+        return path + File.pathSeparator + settings;
+    }
+
+
+    @Nonnull
+    private static BasicFileAttributes attributes(@Nonnull Path path, @Nonnull String source) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new SRecordException("Failed to read SRecord file " + source, e);
+        }
+    }
+
+
+    @Nullable
+    private synchronized SReader find(@Nonnull String key, @Nonnull BasicFileAttributes attributes) {
+        Entry entry = entries.get(key);
+        SReader reader = (entry != null && entry.matches(attributes) ? entry.get() : null);
+
+        if (reader != null) {
+            hits++;
+        } else {
+            misses++;
+            remove(key);
+        }
+
+        return reader;
+    }
+
+
+    private synchronized void add(@Nonnull String key,
+                                  @Nonnull String path,
+                                  @Nonnull BasicFileAttributes attributes,
+                                  @Nonnull SReader reader) {
+        Entry entry = new Entry(path, attributes, reader, softReferences);
+
+        remove(key);
+
+        if (entry.bytes <= maxBytes) {
+            entries.put(key, entry);
+            bytes += entry.bytes;
+            evict();
+        }
+    }
+
+
+    private void remove(@Nonnull String key) {
+        Entry removed = entries.remove(key);
+
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+
+    /**
+     * Remove files that have been reclaimed by the garbage collector, then remove the least recently used files
+     * until the cache is within its size
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry next = iterator.next();
+
+            if (next.get() == null) {
+                bytes -= next.bytes;
+                iterator.remove();
+            }
+        }
+
+        iterator = entries.values().iterator();
+
+        while ((bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Sparse memory image built from the data records of an S-Record file. Data is held in segments of contiguous
+ * bytes, sorted by address, so the memory used is proportional to the amount of data rather than the range of
+ * addresses it covers. Reading an address that is not in any segment returns the fill byte.
+ */
+public class SImage {
+    /** Largest number of bytes in a single segment. Segments never cross a boundary that is a multiple of this */
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final int INITIAL_SEGMENT_SIZE = 256;
+    private static final int FILL_BUFFER_SIZE = 64 * 1024;
+
+
+    /**
+     * A run of contiguous bytes in the image
+     */
+    public static class Segment {
+        private final long start;
+        private byte[] bytes;
+        private int length;
+
+        private Segment(long start) {
+            this.start = start;
+            this.bytes = new byte[INITIAL_SEGMENT_SIZE];
+            this.length = 0;
+        }
+
+
+        private Segment(long start, @Nonnull byte[] bytes) {
+            this.start = start;
+            this.bytes = bytes;
+            this.length = bytes.length;
+        }
+
+
+        /**
+         * Returns the address of the first byte in the segment
+         * @return the address of the first byte in the segment
+         */
+        public long getStartAddress() {
+            return start;
+        }
+
+
+        /**
+         * Returns the address of the last byte in the segment
+         * @return the address of the last byte in the segment
+         */
+        public long getEndAddress() {
+            return start + length - 1;
+        }
+
+
+        /**
+         * Returns the number of bytes in the segment
+         * @return the number of bytes in the segment
+         */
+        public int size() {
+            return length;
+        }
+
+
+        /**
+         * Returns a copy of the bytes in the segment
+         * @return a copy of the bytes in the segment
+         */
+        @Nonnull
+        public byte[] getData() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+
+        /**
+         * Returns a read-only view of the bytes in the segment. The data is not copied. The position of the buffer
+         * is 0 and its limit and capacity are the size of the segment
+         * @return a read-only view of the bytes in the segment
+         */
+        @Nonnull
+        public ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, length).slice().asReadOnlyBuffer();
+        }
+
+
+        private long end() {
+            return start + length;
+        }
+
+
+        private void write(long address, @Nonnull byte[] data, int offset, int size) {
+            int position = (int) (address - start);
+            int required = position + size;
+
+            if (required > bytes.length) {
+                int capacity = Math.max(required, bytes.length + (bytes.length >> 1));
+
+                bytes = Arrays.copyOf(bytes, capacity);
+            }
+
+            System.arraycopy(data, offset, bytes, position, size);
+            length = Math.max(length, required);
+        }
+
+
+        private void trim() {
+            if (bytes.length != length) {
+                bytes = Arrays.copyOf(bytes, length);
+            }
+        }
+    }
+
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final byte fill;
+
+
+    /**
+     * Create an empty image
+     * @param fill          Value returned for addresses that are not in any segment
+     */
+    SImage(byte fill) {
+        this.fill = fill;
+    }
+
+
+    /**
+     * Returns the value returned for addresses that are not in any segment
+     * @return the value returned for addresses that are not in any segment
+     */
+    public byte getFillByte() {
+        return fill;
+    }
+
+
+    /**
+     * Returns {@code true} if the image does not contain any data
+     * @return {@code true} if the image does not contain any data
+     */
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+
+    /**
+     * Returns the address of the first byte in the image, or 0 if the image is empty
+     * @return the address of the first byte in the image
+     */
+    public long getStartAddress() {
+        return (segments.isEmpty() ? 0 : segments.firstKey());
+    }
+
+
+    /**
+     * Returns the address of the last byte in the image, or 0 if the image is empty
+     * @return the address of the last byte in the image
+     */
+    public long getEndAddress() {
+        return (segments.isEmpty() ? 0 : segments.lastEntry().getValue().getEndAddress());
+    }
+
+
+    /**
+     * Returns the number of bytes of data in the image. This does not include any gaps between segments
+     * @return the number of bytes of data in the image
+     */
+    public long size() {
+        long size = 0;
+
+        for (Segment segment : segments.values()) {
+            size += segment.length;
+        }
+
+        return size;
+    }
+
+
+    /**
+     * Returns the segments in the image, sorted by address. Adjacent data is merged into a single segment,
+     * except that segments are never larger than 1 GiB
+     * @return the segments in the image
+     */
+    @Nonnull
+    public List<Segment> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments.values()));
+    }
+
+
+    /**
+     * Returns the segment that contains the {@code address}
+     * @param address       Address to look up
+     * @return the segment that contains the {@code address}, or {@code null} if the address is in a gap
+     */
+    @Nullable
+    public Segment findSegment(long address) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(address);
+        Segment segment = (entry == null ? null : entry.getValue());
+
+        return (segment != null && address < segment.end() ? segment : null);
+    }
+
+
+    /**
+     * Returns {@code true} if the image contains data at the {@code address}
+     * @param address       Address to look up
+     * @return {@code true} if the image contains data at the {@code address}
+     */
+    public boolean contains(long address) {
+        return (findSegment(address) != null);
+    }
+
+
+    /**
+     * Returns the byte at the {@code address}, or the fill byte if the image does not contain the address
+     * @param address       Address to look up
+     * @return the byte at the {@code address}
+     */
+    public byte get(long address) {
+        Segment segment = findSegment(address);
+
+        return (segment == null ? fill : segment.bytes[(int) (address - segment.start)]);
+    }
+
+
+    /**
+     * Returns a contiguous copy of the image from {@link #getStartAddress()} to {@link #getEndAddress()}.
+     * Gaps between segments are set to the fill byte.
+     * @return a contiguous copy of the image
+     * @throws SRecordException if the image spans more addresses than can be held in an array
+     */
+    @Nonnull
+    public byte[] toArray() {
+        long span = (segments.isEmpty() ? 0 : getEndAddress() - getStartAddress() + 1);
+
+        if (span > Integer.MAX_VALUE) {
+            throw new SRecordException("Image spans 0x%x bytes which is too large for an array", span);
+        }
+
+        return toArray(getStartAddress(), (int) span);
+    }
+
+
+    /**
+     * Returns a contiguous copy of part of the image. Addresses that are not in any segment are set to the fill byte.
+     * @param address       Address of the first byte to copy
+     * @param length        Number of bytes to copy
+     * @return a contiguous copy of part of the image
+     */
+    @Nonnull
+    public byte[] toArray(long address, int length) {
+        byte[] result = new byte[length];
+
+        read(address, result, 0, length);
+
+        return result;
+    }
+
+
+    /**
+     * Copy part of the image into an existing array. Addresses that are not in any segment are set to the fill byte.
+     * @param address       Address of the first byte to copy
+     * @param dest          Array that the data is copied to
+     * @param offset        Index into {@code dest} of the first byte to set
+     * @param length        Number of bytes to copy
+     * @throws IndexOutOfBoundsException if {@code offset} and {@code length} are not valid for {@code dest}
+     */
+    public void read(long address, @Nonnull byte[] dest, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset + length > dest.length)) {
+            throw new IndexOutOfBoundsException("Invalid range " + offset + " + " + length);
+        }
+
+        long end = address + length;
+        long position = address;
+
+        for (Segment segment : segments.subMap(floorKey(address), true, end, false).values()) {
+            long first = Math.max(position, segment.start);
+            long last = Math.min(end, segment.end());
+
+            if (first < last) {
+                Arrays.fill(dest, (int) (offset + position - address), (int) (offset + first - address), fill);
+                System.arraycopy(segment.bytes, (int) (first - segment.start),
+                                 dest, (int) (offset + first - address), (int) (last - first));
+                position = last;
+            }
+        }
+
+        Arrays.fill(dest, (int) (offset + position - address), offset + length, fill);
+    }
+
+
+    /**
+     * Write the image from {@link #getStartAddress()} to {@link #getEndAddress()} to a channel. The segments are
+     * written directly from the image without being copied, and gaps between segments are written as the fill byte.
+     * @param target        Channel that the image is written to. The channel is not closed
+     * @return the number of bytes written
+     * @throws SRecordException if the channel could not be written
+     */
+    public long transferTo(@Nonnull WritableByteChannel target) {
+        long written = 0;
+        long position = getStartAddress();
+        ByteBuffer fillBuffer = null;
+
+        try {
+            for (Segment segment : segments.values()) {
+                long gap = segment.start - position;
+
+                if (gap != 0) {
+                    fillBuffer = (fillBuffer == null ? newFillBuffer() : fillBuffer);
+                    written += writeFill(target, fillBuffer, gap);
+                }
+
+                written += writeFully(target, ByteBuffer.wrap(segment.bytes, 0, segment.length));
+                position = segment.end();
+            }
+        } catch (IOException e) {
+            throw new SRecordException("Failed to transfer image", e);
+        }
+
+        return written;
+    }
+
+
+    @Nonnull
+    private ByteBuffer newFillBuffer() {
+        byte[] bytes = new byte[FILL_BUFFER_SIZE];
+
+        Arrays.fill(bytes, fill);
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+
+    private long writeFill(@Nonnull WritableByteChannel target, @Nonnull ByteBuffer fillBuffer, long count)
+            throws IOException {
+        long remaining = count;
+
+        while (remaining != 0) {
+            fillBuffer.clear();
+            fillBuffer.limit((int) Math.min(remaining, fillBuffer.capacity()));
+            remaining -= writeFully(target, fillBuffer);
+        }
+
+        return count;
+    }
+
+
+    private int writeFully(@Nonnull WritableByteChannel target, @Nonnull ByteBuffer source) throws IOException {
+        int count = source.remaining();
+
+        while (source.hasRemaining()) {
+            target.write(source);
+        }
+
+        return count;
+    }
+
+
+    private long floorKey(long address) {
+        Long key = segments.floorKey(address);
+
+        return (key == null ? address : key);
+    }
+
+
+    /**
+     * Write data into the image. Any data that was previously written to the same addresses is overwritten.
+     * @param address       Address of the first byte to write
+     * @param data          Buffer that contains the data
+     * @param offset        Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     */
+    void write(long address, @Nonnull byte[] data, int offset, int length) {
+        long position = address;
+        int index = offset;
+        int remaining = length;
+
+        while (remaining != 0) {
+            long boundary = (position / MAX_SEGMENT_SIZE + 1) * MAX_SEGMENT_SIZE;
+            int size = (int) Math.min(remaining, boundary - position);
+
+            writeSegment(position, data, index, size);
+            position += size;
+            index += size;
+            remaining -= size;
+        }
+    }
+
+
+    /**
+     * Write data that does not cross a segment boundary into the image, merging any segments that it overlaps or
+     * is adjacent to.
+     * @param address       Address of the first byte to write
+     * @param data          Buffer that contains the data
+     * @param offset        Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     */
+    private void writeSegment(long address, @Nonnull byte[] data, int offset, int length) {
+        long block = address / MAX_SEGMENT_SIZE;
+        long end = address + length;
+        Map.Entry<Long, Segment> floor = segments.floorEntry(address);
+        Segment segment;
+
+        if (floor != null && floor.getValue().end() >= address && (floor.getKey() / MAX_SEGMENT_SIZE) == block) {
+            segment = floor.getValue();
+        } else {
+            segment = new Segment(address);
+            segments.put(address, segment);
+        }
+
+        Map.Entry<Long, Segment> next = segments.higherEntry(segment.start);
+
+        while (next != null && next.getKey() <= end && (next.getKey() / MAX_SEGMENT_SIZE) == block) {
+            Segment absorbed = next.getValue();
+
+            segments.remove(next.getKey());
+            segment.write(absorbed.start, absorbed.bytes, 0, absorbed.length);
+            next = segments.higherEntry(segment.start);
+        }
+
+        segment.write(address, data, offset, length);
+    }
+
+
+    /**
+     * Add a complete segment that has already been merged with its neighbours, such as a segment from an image
+     * that has been saved. The segment must not overlap or touch any other segment, unless the two are on either
+     * side of a segment boundary
+     * @param address       Address of the first byte of the segment
+     * @param data          Buffer that contains the bytes of the segment between its position and limit. The bytes
+     *                      are copied, and the position of the buffer is moved to its limit
+     */
+    void addSegment(long address, @Nonnull ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+
+        data.get(bytes);
+        segments.put(address, new Segment(address, bytes));
+    }
+
+
+    /**
+     * Release any spare capacity once the image is complete
+     */
+    void trim() {
+        segments.values().forEach(Segment::trim);
+    }
+}
@@ -0,0 +1,366 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Index of the addresses held by each block of lines in an S-Record file, so that a few bytes can be read from a
+ * large file without loading all of it. The file is split into blocks of about 64 KiB of text, and the index holds
+ * the offset of each block in the file and the range of addresses covered by its data records. A read only parses
+ * the blocks whose range overlaps the requested addresses, so it decodes a few hundred lines whatever the size of
+ * the file. Files that are written in address order index best; a block that holds widely separated addresses is
+ * closed early so that it does not cover the addresses in between.
+ * <p>
+ * The index does not hold the file open. Each read checks that the size and last modified time of the file are
+ * unchanged since it was indexed.
+ * <p>
+ * An index can be saved alongside the file. All values are big endian:
+ * <pre>
+ *   long      magic number, which includes the format version
+ *   long      size of the source file
+ *   long      last modified time of the source file, in milliseconds
+ *   int       number of blocks
+ *   long, int, long, long   offset, number of the line before it, lowest address and address after the highest
+ *                           address of each block
+ *   long      CRC32 of everything before it
+ * </pre>
+ * @see SLoader#index()
+ * @see SLoader#index(File)
+ */
+public final class SIndex {
+    private static final long MAGIC = 0x5352_4543_4f46_5301L;          // "SRECOFS" and version 1
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long MAX_SPAN = 1024 * 1024;
+    private static final int INITIAL_BLOCKS = 64;
+    private static final int ENTRY_SIZE = (3 * Long.BYTES) + Integer.BYTES;
+    private static final int FIXED_SIZE = (4 * Long.BYTES) + Integer.BYTES;
+
+    private final String source;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final byte fill;
+    private final boolean verifyChecksums;
+    private long[] offsets = new long[INITIAL_BLOCKS];
+    private int[] lines = new int[INITIAL_BLOCKS];
+    private long[] lowest = new long[INITIAL_BLOCKS];
+    private long[] highest = new long[INITIAL_BLOCKS];
+    private int blocks = 0;
+
+
+    private SIndex(@Nonnull String source,
+                   @Nonnull BasicFileAttributes attributes,
+                   byte fill,
+                   boolean verifyChecksums) {
+        this.source = source;
+        this.sourceSize = attributes.size();
+        this.sourceModified = attributes.lastModifiedTime().toMillis();
+        this.fill = fill;
+        this.verifyChecksums = verifyChecksums;
+    }
+
+
+    /**
+     * Index a file in a single pass over its records
+     * @param source            Path of the file
+     * @param attributes        Attributes of the file, read before it is parsed
+     * @param reader            Reader for the whole file
+     * @param fill              Value returned for addresses that do not contain data
+     * @param verifyChecksums   {@code true} if the checksum of each record should be verified
+     * @return the index of the file
+     * @throws IOException if the file could not be read
+     * @throws SRecordException if the file is not a valid S-Record file
+     */
+    @Nonnull
+    static SIndex build(@Nonnull String source,
+                        @Nonnull BasicFileAttributes attributes,
+                        @Nonnull LineReader reader,
+                        byte fill,
+                        boolean verifyChecksums) throws IOException {
+        SIndex index = new SIndex(source, attributes, fill, verifyChecksums);
+        SParser parser = new SParser(reader).withChecksums(verifyChecksums);
+
+        while (parser.next()) {
+            if (parser.getType().isData() && (parser.getDataLength() != 0)) {
+                index.add(reader.getLineOffset(), parser.getLineNumber(), parser.getAddress(), parser.getDataLength());
+            }
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Read a saved index
+     * @param file              Saved index
+     * @param source            Path of the indexed file
+     * @param attributes        Current attributes of the indexed file
+     * @param fill              Value returned for addresses that do not contain data
+     * @param verifyChecksums   {@code true} if the checksum of each record should be verified
+     * @return the index, or {@code null} if it is missing, does not match the source file or is damaged
+     */
+    @Nullable
+    static SIndex open(@Nonnull File file,
+                       @Nonnull String source,
+                       @Nonnull BasicFileAttributes attributes,
+                       byte fill,
+                       boolean verifyChecksums) {
+        SIndex index = null;
+
+        if (file.isFile() && file.length() <= Integer.MAX_VALUE) {
+            try (
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+            ) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                SIndex candidate = new SIndex(source, attributes, fill, verifyChecksums);
+
+                index = (candidate.decode(buffer) ? candidate : null);
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+                index = null;
+            }
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Read a range of addresses from the file. Only the blocks of the file that hold data in the range are parsed.
+     * If more than one record writes to the same address then the last one in the file is used, as it would be by
+     * {@link SReader}
+     * @param address       Address of the first byte to read
+     * @param length        Number of bytes to read
+     * @return the bytes at the requested addresses. Addresses that are not covered by any data record are set to
+     *              the fill byte of the loader that built the index
+     * @throws IllegalArgumentException if {@code length} is negative
+     * @throws SRecordException if the file could not be read, has changed since it was indexed or is not a valid
+     *              S-Record file
+     * @see SLoader#withFillByte(byte)
+     */
+    @Nonnull
+    public byte[] read(long address, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+
+        byte[] result = new byte[length];
+        long end = address + length;
+
+        Arrays.fill(result, fill);
+
+        try (
+            FileChannel channel = FileChannel.open(Paths.get(source), StandardOpenOption.READ)
+        ) {
+            checkUnchanged(channel);
+
+            for (int i = 0; i < blocks; i++) {
+                if ((lowest[i] < end) && (highest[i] > address)) {
+                    copy(channel, i, address, result);
+                }
+            }
+        } catch (IOException e) {
+            throw new SRecordException("Failed to read SRecord file " + source, e);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Returns the number of blocks that the file has been split into
+     * @return the number of blocks that the file has been split into
+     */
+    public int getBlocks() {
+        return blocks;
+    }
+
+
+    /**
+     * Save the index, replacing any index that is already there. Failures are ignored, so the file will be indexed
+     * again the next time the index is requested
+     * @param file          Destination of the index
+     */
+    void save(@Nonnull File file) {
+        String name = file.getName() + '.' + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+        Path temp = file.getAbsoluteFile().toPath().resolveSibling(name);
+        ByteBuffer buffer = encode();
+
+        try {
+            try (
+                FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+            ) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                channel.force(false);
+            }
+
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (temp.toFile().exists() && !temp.toFile().delete()) {
+                temp.toFile().deleteOnExit();
+            }
+        }
+    }
+
+
+    /**
+     * Add a data record to the current block, or start a new block at the record if the current block is full or
+     * the record is too far from the addresses that it already holds
+     * @param offset        Offset into the file of the line that holds the record
+     * @param lineNumber    Line number of the record
+     * @param address       Address of the first data byte
+     * @param length        Number of data bytes
+     */
+    private void add(long offset, int lineNumber, long address, int length) {
+        int last = blocks - 1;
+        long end = address + length;
+        boolean extend = (blocks != 0) &&
+            (offset - offsets[last] < BLOCK_SIZE) &&
+            (Math.max(highest[last], end) - Math.min(lowest[last], address) <= MAX_SPAN);
+
+        if (extend) {
+            lowest[last] = Math.min(lowest[last], address);
+            highest[last] = Math.max(highest[last], end);
+        } else {
+            if (blocks == offsets.length) {
+                grow(blocks * 2);
+            }
+
+            offsets[blocks] = offset;
+            lines[blocks] = lineNumber - 1;
+            lowest[blocks] = address;
+            highest[blocks] = end;
+            blocks++;
+        }
+    }
+
+
+    private void grow(int size) {
+        offsets = Arrays.copyOf(offsets, size);
+        lines = Arrays.copyOf(lines, size);
+        lowest = Arrays.copyOf(lowest, size);
+        highest = Arrays.copyOf(highest, size);
+    }
+
+
+    /**
+     * Parse a block of the file and copy the data that is in the requested range into the {@code result}
+     * @param channel       Indexed file
+     * @param block         Index of the block
+     * @param address       Address of the first byte of the {@code result}
+     * @param result        Bytes at the requested addresses
+     * @throws IOException if the file could not be read
+     */
+    private void copy(@Nonnull FileChannel channel, int block, long address, @Nonnull byte[] result)
+            throws IOException {
+        long limit = (block + 1 == blocks ? sourceSize : offsets[block + 1]);
+        SParser parser = SParser.forMappedFile(channel, offsets[block], limit)
+            .asFragment(lines[block])
+            .withChecksums(verifyChecksums);
+
+        while (parser.next()) {
+            long from = Math.max(address, parser.getAddress());
+            long to = Math.min(address + result.length, parser.getAddress() + parser.getDataLength());
+
+            if (parser.getType().isData() && (from < to)) {
+                System.arraycopy(parser.getData(),
+                                 (int) (from - parser.getAddress()),
+                                 result,
+                                 (int) (from - address),
+                                 (int) (to - from));
+            }
+        }
+    }
+
+
+    private void checkUnchanged(@Nonnull FileChannel channel) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(source), BasicFileAttributes.class);
+
+        if ((channel.size() != sourceSize) || (attributes.lastModifiedTime().toMillis() != sourceModified)) {
+            throw new SRecordException("SRecord file " + source + " has changed since it was indexed");
+        }
+    }
+
+
+    @Nonnull
+    private ByteBuffer encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + (blocks * ENTRY_SIZE));
+        CRC32 crc = new CRC32();
+
+        buffer.putLong(MAGIC).putLong(sourceSize).putLong(sourceModified).putInt(blocks);
+
+        for (int i = 0; i < blocks; i++) {
+            buffer.putLong(offsets[i]).putInt(lines[i]).putLong(lowest[i]).putLong(highest[i]);
+        }
+
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue()).flip();
+
+        return buffer;
+    }
+
+
+    /**
+     * Read the blocks from a saved index, if it matches the source file and is not damaged
+     * @param buffer        Saved index
+     * @return {@code true} if the blocks were read
+     */
+    private boolean decode(@Nonnull ByteBuffer buffer) {
+        boolean valid = (buffer.remaining() >= FIXED_SIZE) &&
+            (buffer.getLong() == MAGIC) &&
+            isIntact(buffer) &&
+            (buffer.getLong() == sourceSize) &&
+            (buffer.getLong() == sourceModified);
+        int count = (valid ? buffer.getInt() : 0);
+
+        valid = valid && (count >= 0) && (buffer.remaining() == ((long) count * ENTRY_SIZE) + Long.BYTES);
+
+        if (valid) {
+            grow(count);
+
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buffer.getLong();
+                lines[i] = buffer.getInt();
+                lowest[i] = buffer.getLong();
+                highest[i] = buffer.getLong();
+            }
+
+            blocks = count;
+        }
+
+        return valid;
+    }
+
+
+    /**
+     * Check the CRC of the whole saved index. The position of the {@code buffer} is not changed
+     * @param buffer        Saved index
+     * @return {@code true} if the saved index has not been damaged
+     */
+    private static boolean isIntact(@Nonnull ByteBuffer buffer) {
+        ByteBuffer content = buffer.duplicate();
+        CRC32 crc = new CRC32();
+
+        content.position(0).limit(buffer.limit() - Long.BYTES);
+        crc.update(content);
+
+        return (crc.getValue() == buffer.getLong(buffer.limit() - Long.BYTES));
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.tymefly.srec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Lazy, pull based, iterator over the records in an S-Record source. Records are only read from the source as
+ * they are requested, so a caller can stop early without reading the rest of the source. The source is validated
+ * in the same way as {@link SReader}, except that a missing terminating record is only detected if the caller
+ * iterates to the end of the source.
+ * Closing the iterator closes the underlying source.
+ */
+public class SIterator implements Iterator<SLine>, Closeable {
+    private final RecordParser parser;
+    private final Closeable source;
+    private SLine next = null;
+    private boolean hasEnded = false;
+
+
+    /**
+     * Constructor
+     * @param parser        Parser that reads the source
+     * @param source        Resource that will be closed when the iterator is closed
+     */
+    SIterator(@Nonnull RecordParser parser, @Nonnull Closeable source) {
+        this.parser = parser;
+        this.source = source;
+    }
+
+
+    /**
+     * Create an iterator over the records in a stream of ASCII characters
+     * @param source        Source of the S-Record data
+     * @return an iterator over the records in the {@code source}
+     */
+    @Nonnull
+    public static SIterator of(@Nonnull Reader source) {
+        return new SIterator(SParser.forReader(source), source);
+    }
+
+
+    /**
+     * Create an iterator over the records in a stream of ASCII bytes
+     * @param source        Source of the S-Record data
+     * @return an iterator over the records in the {@code source}
+     */
+    @Nonnull
+    public static SIterator of(@Nonnull InputStream source) {
+        return of(Channels.newChannel(source));
+    }
+
+
+    /**
+     * Create an iterator over the records in a channel of ASCII bytes
+     * @param source        Source of the S-Record data
+     * @return an iterator over the records in the {@code source}
+     */
+    @Nonnull
+    public static SIterator of(@Nonnull ReadableByteChannel source) {
+        return new SIterator(SParser.forChannel(source), source);
+    }
+
+
+    /**
+     * Returns a sequential stream of the remaining records. Closing the stream closes this iterator.
+     * @return a sequential stream of the remaining records
+     */
+    @Nonnull
+    public Stream<SLine> stream() {
+        Spliterator<SLine> spliterator =
+            Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false)
+            .onClose(this::close);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @throws SRecordException if the source could not be read or is not a valid S-Record file
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !hasEnded) {
+            try {
+                if (parser.next()) {
+                    byte[] data = Arrays.copyOf(parser.getData(), parser.getDataLength());
+
+                    next = new SLine(parser.getType(), parser.getAddress(), data, parser.getLineNumber());
+                } else {
+                    hasEnded = true;
+                }
+            } catch (IOException e) {
+                throw new SRecordException("Failed to read SRecord data", e);
+            }
+        }
+
+        return (next != null);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @throws SRecordException if the source could not be read or is not a valid S-Record file
+     */
+    @Override
+    @Nonnull
+    public SLine next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        SLine result = next;
+
+        next = null;
+
+        return result;
+    }
+
+
+    /**
+     * Close the underlying source
+     * @throws SRecordException if the source could not be closed
+     */
+    @Override
+    public void close() {
+        try {
+            source.close();
+        } catch (IOException e) {
+            throw new SRecordException("Failed to close SRecord data", e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.tymefly.srec;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * A single, decoded, record from an S-Record file
+ * @see SIterator
+ */
+public class SLine {
+    private final SRecord type;
+    private final long address;
+    private final byte[] data;
+    private final int lineNumber;
+
+
+    /**
+     * Constructor
+     * @param type          Type of the record
+     * @param address       Value of the address field
+     * @param data          Value of the data field. This array is not copied
+     * @param lineNumber    Line in the source that contained the record
+     */
+    SLine(@Nonnull SRecord type, long address, @Nonnull byte[] data, int lineNumber) {
+        this.type = type;
+        this.address = address;
+        this.data = data;
+        this.lineNumber = lineNumber;
+    }
+
+
+    /**
+     * Returns the type of the record
+     * @return the type of the record
+     */
+    @Nonnull
+    public SRecord getType() {
+        return type;
+    }
+
+
+    /**
+     * Returns the value of the address field. For data records this is the address of the first byte of data,
+     * for count records it is the number of data records and for terminating records it is the start address
+     * @return the value of the address field
+     */
+    public long getAddress() {
+        return address;
+    }
+
+
+    /**
+     * Returns the value of the data field. For header records this is the text of the header
+     * @return the value of the data field
+     */
+    @Nonnull
+    public byte[] getData() {
+        return data.clone();
+    }
+
+
+    /**
+     * Returns the number of bytes in the data field
+     * @return the number of bytes in the data field
+     */
+    public int getLength() {
+        return data.length;
+    }
+
+
+    /**
+     * Returns the line in the source that contained the record
+     * @return the line in the source that contained the record
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,511 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Configurable loader for S-Record files. By default the file is streamed through a small buffer, which
+ * gives the same result as {@link SReader#load(File)}
+ */
+public class SLoader {
+    private final String source;
+    private boolean mapped = false;
+    private ForkJoinPool pool = null;
+    private boolean verifyChecksums = true;
+    private boolean intelHex = false;
+    private byte fill = 0;
+    private SMetricsListener listener = null;
+    private SCache cache = null;
+    private File sidecar = null;
+
+
+    /**
+     * Create a loader for the {@code source} file
+     * @param source        File to read
+     */
+    public SLoader(@Nonnull File source) {
+        this(source.getAbsolutePath());
+    }
+
+
+    /**
+     * Create a loader for the {@code source} file
+     * @param source        File to read
+     */
+    public SLoader(@Nonnull String source) {
+        this.source = source;
+    }
+
+
+    /**
+     * Memory map the file and parse it directly from the mapped buffer.
+     * @return this loader
+     * @see SReader#loadMapped(File)
+     */
+    @Nonnull
+    public SLoader withMemoryMapping() {
+        this.mapped = true;
+
+        return this;
+    }
+
+
+    /**
+     * Split the file into chunks at line boundaries and parse the chunks in parallel on the common
+     * {@link ForkJoinPool}. Parallel loading always memory maps the file.
+     * @return this loader
+     */
+    @Nonnull
+    public SLoader withParallelism() {
+        return withParallelism(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Split the file into chunks at line boundaries and parse the chunks in parallel on the {@code pool}.
+     * The number of chunks is derived from the parallelism of the pool. Parallel loading always memory maps the file.
+     * @param pool          Pool used to parse the chunks
+     * @return this loader
+     */
+    @Nonnull
+    public SLoader withParallelism(@Nonnull ForkJoinPool pool) {
+        this.pool = pool;
+        this.mapped = true;
+
+        return this;
+    }
+
+
+    /**
+     * Do not verify the checksum of each record. This improves throughput for trusted files that have already
+     * been validated, but corrupted data will not be detected. All other checks are still made.
+     * @return this loader
+     */
+    @Nonnull
+    public SLoader withoutChecksumVerification() {
+        this.verifyChecksums = false;
+
+        return this;
+    }
+
+
+    /**
+     * Read the file as Intel HEX rather than S-Records. Extended segment and extended linear address records
+     * are applied to the data records that follow them, so data is presented with its full 32 bit address and
+     * can be loaded, visited, streamed or converted in the same way as S-Record data. Intel HEX files are always
+     * parsed sequentially, so parallel loading is not used.
+     * @return this loader
+     * @see SWriter#asVisitor()
+     */
+    @Nonnull
+    public SLoader withIntelHex() {
+        this.intelHex = true;
+
+        return this;
+    }
+
+
+    /**
+     * Set the value returned for addresses in the loaded image that are not covered by any data record.
+     * The default value is zero
+     * @param fill          Value for addresses that do not contain data
+     * @return this loader
+     * @see SImage#getFillByte()
+     */
+    @Nonnull
+    public SLoader withFillByte(byte fill) {
+        this.fill = fill;
+
+        return this;
+    }
+
+
+    /**
+     * Measure each load, visit or conversion of the file and report the results to the {@code listener}. Metrics
+     * are collected per block of data and per record, so they add a small cost to each record that is parsed.
+     * Streams and iterators are not measured.
+     * @param listener      Listener that is passed the metrics after each successful read of the file
+     * @return this loader
+     * @see SMetrics
+     */
+    @Nonnull
+    public SLoader withMetrics(@Nonnull SMetricsListener listener) {
+        this.listener = listener;
+
+        return this;
+    }
+
+
+    /**
+     * Answer {@link #load()} from the {@code cache} if the file has already been loaded, with the same fill byte,
+     * format and checksum verification, and has not changed since. Otherwise the file is loaded and added to the
+     * cache. Visits, conversions, streams and iterators always read the file.
+     * @param cache         Cache of loaded files
+     * @return this loader
+     */
+    @Nonnull
+    public SLoader withCache(@Nonnull SCache cache) {
+        this.cache = cache;
+
+        return this;
+    }
+
+
+    /**
+     * Save a binary copy of each loaded file next to it, with {@code .idx} added to its name, and use it for later
+     * loads while the file is unchanged.
+     * @return this loader
+     * @see #withSidecar(File)
+     */
+    @Nonnull
+    public SLoader withSidecar() {
+        return withSidecar(new File(source + Sidecar.SUFFIX));
+    }
+
+
+    /**
+     * Save a binary copy of each loaded file as the {@code sidecar} file, and use it for later loads while the file
+     * is unchanged. The decoded data is copied from the memory mapped sidecar into the image, so a load does not
+     * need to parse any records, although the image still uses as much heap as a parsed one. The sidecar records the size and last modified time of the file and the settings of this
+     * loader, and it is replaced if any of them change. It is also protected by a CRC, so a damaged sidecar is
+     * replaced rather than used. Failures to read or write the sidecar are ignored, and the file is parsed as
+     * normal. Visits, conversions, streams and iterators always read the file.
+     * @param sidecar       Binary copy of the file. The directory that contains it must be writable
+     * @return this loader
+     */
+    @Nonnull
+    public SLoader withSidecar(@Nonnull File sidecar) {
+        this.sidecar = sidecar;
+
+        return this;
+    }
+
+
+    /**
+     * Load the file
+     * @return SReader containing data from the source file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    @Nonnull
+    public SReader load() {
+        return (cache == null ? read() : cache.load(this));
+    }
+
+
+    /**
+     * Index the file in a single pass, so that ranges of addresses can be read from it later without loading the
+     * whole file. The index holds the offset and address range of each block of about 64 KiB of text, so it is
+     * a small fraction of the size of the file. Reads from the index use the fill byte and checksum verification
+     * of this loader. Intel HEX files can not be indexed, because the address of a data record depends on the
+     * address records before it.
+     * @return the index of the file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     * @throws IllegalStateException if the loader is configured to read Intel HEX
+     * @see SIndex#read(long, int)
+     */
+    @Nonnull
+    public SIndex index() {
+        Path path = Paths.get(source);
+
+        checkIndexable();
+
+        try (
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)
+        ) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+            return SIndex.build(source, attributes, newReader(channel), fill, verifyChecksums);
+        } catch (IOException e) {
+            throw new SRecordException("Failed to read SRecord file " + source, e);
+        }
+    }
+
+
+    /**
+     * Returns the index of the file that is saved as {@code file}, if it was built for the current size and last
+     * modified time of the file and is not damaged. Otherwise the file is indexed again and the index is saved.
+     * Failures to read or write the saved index are ignored.
+     * @param file          Saved index. The directory that contains it must be writable
+     * @return the index of the file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     * @throws IllegalStateException if the loader is configured to read Intel HEX
+     * @see #index()
+     */
+    @Nonnull
+    public SIndex index(@Nonnull File file) {
+        SIndex index = null;
+
+        checkIndexable();
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(source), BasicFileAttributes.class);
+
+            index = SIndex.open(file, source, attributes, fill, verifyChecksums);
+        } catch (IOException e) {
+            throw new SRecordException("Failed to read SRecord file " + source, e);
+        }
+
+        if (index == null) {
+            index = index();
+            index.save(file);
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Check that the loader is configured to read a file that can be indexed
+     * @throws IllegalStateException if the loader is configured to read Intel HEX
+     */
+    private void checkIndexable() {
+        if (intelHex) {
+            throw new IllegalStateException("Intel HEX files can not be indexed");
+        }
+    }
+
+
+    /**
+     * Convert the file to a raw binary image. The byte at each address is written at offset
+     * {@code address - baseAddress} in the {@code destination}, so the image is streamed to the file without being
+     * held in memory. Gaps between records are not written, which leaves holes in the file on file systems that
+     * support sparse files; if the fill byte is not zero then the gaps are filled with it instead.
+     * @param destination   File that will be created or overwritten
+     * @param baseAddress   Address that is written to the start of the file
+     * @return the size of the binary image
+     * @throws SRecordException if the file could not be read or written, is not a valid S-Record file or
+     *              contains data below the {@code baseAddress}
+     * @see #withFillByte(byte)
+     */
+    public long toBinary(@Nonnull File destination, long baseAddress) {
+        try (
+            FileChannel channel = FileChannel.open(destination.toPath(),
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            BinaryVisitor visitor = new BinaryVisitor(channel, baseAddress, fill);
+
+            visit(visitor);
+
+            return visitor.finish();
+        } catch (IOException e) {
+            throw new SRecordException("Failed to write binary file " + destination.getAbsolutePath(), e);
+        }
+    }
+
+
+    /**
+     * Convert the file to a raw binary image that starts at the lowest address in the file. The file is read
+     * twice; once to find the lowest address and then again to write the image.
+     * @param destination   File that will be created or overwritten
+     * @return the size of the binary image
+     * @throws SRecordException if the file could not be read or written, or is not a valid S-Record file
+     * @see #toBinary(File, long)
+     */
+    public long toBinary(@Nonnull File destination) {
+        long[] lowest = { Long.MAX_VALUE };
+
+        visit(new SVisitor() {
+            @Override
+            public void onData(long address, @Nonnull byte[] buffer, int offset, int length) {
+                lowest[0] = Math.min(lowest[0], address);
+            }
+        }, false);
+
+        return toBinary(destination, (lowest[0] == Long.MAX_VALUE ? 0 : lowest[0]));
+    }
+
+
+    /**
+     * Parse the file and pass each record, in file order, to the {@code visitor}. Unless parallel loading has been
+     * selected the records are not buffered, so files of any size can be processed in constant memory.
+     * @param visitor       Visitor that is notified of each record
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    public void visit(@Nonnull SVisitor visitor) {
+        visit(visitor, verifyChecksums);
+    }
+
+
+    /**
+     * Returns a lazy stream of the records in the file. Records are only parsed as they are consumed, so the
+     * stream can be short-circuited without reading the rest of the file. Parallel loading is not used by the stream.
+     * The stream must be closed to release the file.
+     * @return a lazy stream of the records in the file
+     * @throws SRecordException if the file could not be opened
+     */
+    @Nonnull
+    public Stream<SLine> stream() {
+        return iterator().stream();
+    }
+
+
+    /**
+     * Returns a lazy iterator over the records in the file. Records are only parsed as they are requested.
+     * Parallel loading is not used by the iterator. The iterator must be closed to release the file.
+     * @return a lazy iterator over the records in the file
+     * @throws SRecordException if the file could not be opened
+     */
+    @Nonnull
+    public SIterator iterator() {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(source), StandardOpenOption.READ);
+            return new SIterator(newParser(newReader(channel)).withChecksums(verifyChecksums), channel);
+        } catch (IOException e) {
+            throw new SRecordException("Failed to read SRecord file " + source, e);
+        }
+    }
+
+
+    /**
+     * Parse the file and pass each record, in file order, to the {@code visitor}.
+     * @param visitor           Visitor that is notified of each record
+     * @param verifyChecksums   {@code true} if the checksum of each record should be verified
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    void visit(@Nonnull SVisitor visitor, boolean verifyChecksums) {
+        long started = System.nanoTime();
+        FlightEvents flight = FlightEvents.load(source);
+        SMetrics metrics = ((listener == null) && !flight.isEnabled() ? null : new SMetrics(true, verifyChecksums));
+
+        try (
+            FileChannel channel = FileChannel.open(Paths.get(source), StandardOpenOption.READ)
+        ) {
+            if ((pool != null) && !intelHex) {
+                new ChunkedParser(source, channel, pool, verifyChecksums).parse(visitor, metrics);
+            } else if (metrics == null) {
+                RecordParser parser = newParser(newReader(channel)).withChecksums(verifyChecksums);
+
+                while (parser.next()) {
+                    parser.publish(visitor);
+                }
+            } else {
+                visit(newReader(channel), visitor, verifyChecksums, metrics);
+            }
+        } catch (IOException e) {
+            SRecordException error = new SRecordException("Failed to read SRecord file " + source, e);
+
+            visitor.onError(error);
+            throw error;
+        } catch (SRecordException e) {
+            visitor.onError(e);
+            throw e;
+        }
+
+        if (metrics != null) {
+            metrics.addElapsed(System.nanoTime() - started);
+            flight.commit(metrics);
+        }
+
+        if (listener != null) {
+            listener.onLoad(source, metrics);
+        }
+    }
+
+
+    /**
+     * Parse the file sequentially, measuring the time spent in the {@code visitor} and counting the records
+     * @param reader            Reader for the file
+     * @param visitor           Visitor that is notified of each record
+     * @param verifyChecksums   {@code true} if the checksum of each record should be verified
+     * @param metrics           Collects the measurements
+     * @throws IOException if the file could not be read
+     */
+    private void visit(@Nonnull LineReader reader,
+                       @Nonnull SVisitor visitor,
+                       boolean verifyChecksums,
+                       @Nonnull SMetrics metrics) throws IOException {
+        RecordParser parser = newParser(reader).withChecksums(verifyChecksums);
+
+        while (parser.next()) {
+            long published = System.nanoTime();
+
+            parser.publish(visitor);
+            metrics.addVisitor(System.nanoTime() - published);
+            metrics.addRecord(parser.getType(), parser.getAddress(), parser.getDataLength());
+        }
+
+        metrics.addTransfer(reader.getBytesRead(), reader.getIoNanos());
+        metrics.addLines(reader.getLineNumber());
+    }
+
+
+    @Nonnull
+    private LineReader newReader(@Nonnull FileChannel channel) throws IOException {
+        return (mapped ? LineReader.forMappedFile(channel) : LineReader.forChannel(channel));
+    }
+
+
+    @Nonnull
+    private RecordParser newParser(@Nonnull LineReader reader) {
+        return (intelHex ? new IntelParser(reader) : new SParser(reader));
+    }
+
+
+    /**
+     * Load the file without using the cache, from the sidecar if there is a valid one
+     * @return SReader containing data from the source file
+     * @throws SRecordException if the file could not be read or is not a valid S-Record file
+     */
+    @Nonnull
+    SReader read() {
+        Sidecar index = (sidecar == null ? null : Sidecar.forSource(sidecar, Paths.get(source), getSettings()));
+        SReader reader = (index == null ? null : index.read());
+
+        if (reader == null) {
+            reader = SReader.load(this);
+
+            if (index != null) {
+                index.write(reader);
+            }
+        }
+
+        return reader;
+    }
+
+
+    @Nonnull
+    String getSource() {
+        return source;
+    }
+
+
+    boolean isMapped() {
+        return mapped;
+    }
+
+
+    @Nullable
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+
+    byte getFillByte() {
+        return fill;
+    }
+
+
+    /**
+     * Returns a description of the settings that change the SReader that is loaded, but not those that only
+     * change how it is loaded
+     * @return a description of the settings that change the SReader
+     */
+    @Nonnull
+    String getSettings() {
+        return (intelHex ? "hex" : "srec") + ',' + fill + ',' + verifyChecksums;
+    }
+}
@@ -0,0 +1,302 @@
+package com.github.tymefly.srec;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Measurements of a single load or write of a file, which are passed to an {@link SMetricsListener} once the
+ * operation has completed. The elapsed time is split into the time spent waiting for I/O, the time spent in the
+ * caller's visitor and the remaining time spent decoding or encoding records. Checksums are verified as the data
+ * is decoded, so the cost of verification is included in the codec time; it can be found by comparing a load with
+ * {@link SLoader#withoutChecksumVerification()}.
+ * <p>
+ * When a file is memory mapped the pages are read from the disk as they are first touched, so that I/O is also
+ * included in the codec time. Times for a parallel load are measured on the calling thread.
+ */
+public final class SMetrics {
+    private static final long NO_ADDRESS = -1;
+
+    private final long[] records = new long[SRecord.values().length];
+    private final boolean reading;
+    private final boolean checksumVerified;
+    private long bytes = 0;
+    private long lines = 0;
+    private long elapsedNanos = 0;
+    private long ioNanos = 0;
+    private long visitorNanos = 0;
+    private long vectorBytes = 0;
+    private long wordBytes = 0;
+    private long tableBytes = 0;
+    private long lowestAddress = Long.MAX_VALUE;
+    private long highestAddress = NO_ADDRESS;
+
+
+    /**
+     * Create an empty set of measurements
+     * @param reading           {@code true} for a load or {@code false} for a write
+     * @param checksumVerified  {@code true} if the checksum of each record is verified
+     */
+    SMetrics(boolean reading, boolean checksumVerified) {
+        this.reading = reading;
+        this.checksumVerified = checksumVerified;
+    }
+
+
+    /**
+     * Returns the number of bytes that were read from, or written to, the file
+     * @return the number of bytes that were read or written
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+
+    /**
+     * Returns the number of lines that were read, including blank lines, or written
+     * @return the number of lines that were read or written
+     */
+    public long getLines() {
+        return lines;
+    }
+
+
+    /**
+     * Returns the number of records of a single type. Intel HEX records are counted as the equivalent S-Record
+     * type, and address records that are applied to the data that follows them are not counted
+     * @param type          Type of record
+     * @return the number of records of the {@code type}
+     */
+    public long getRecords(@Nonnull SRecord type) {
+        return records[type.ordinal()];
+    }
+
+
+    /**
+     * Returns the total number of records of all types
+     * @return the total number of records
+     */
+    public long getRecords() {
+        long total = 0;
+
+        for (long count : records) {
+            total += count;
+        }
+
+        return total;
+    }
+
+
+    /**
+     * Returns the lowest address of any data byte
+     * @return the lowest address of any data byte, or -1 if there was no data
+     */
+    public long getLowestAddress() {
+        return (highestAddress == NO_ADDRESS ? NO_ADDRESS : lowestAddress);
+    }
+
+
+    /**
+     * Returns the highest address of any data byte
+     * @return the highest address of any data byte, or -1 if there was no data
+     */
+    public long getHighestAddress() {
+        return highestAddress;
+    }
+
+
+    /**
+     * Returns the wall clock time taken by the load or write, in nanoseconds. For a streaming writer this is the
+     * total time spent adding records and closing the writer
+     * @return the time taken by the load or write
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+
+    /**
+     * Returns the time spent waiting to read or write the file, in nanoseconds
+     * @return the time spent waiting for I/O
+     */
+    public long getIoNanos() {
+        return ioNanos;
+    }
+
+
+    /**
+     * Returns the time spent in the visitor that records were passed to, in nanoseconds. This includes building
+     * the image for {@link SReader}. It is always zero for a write
+     * @return the time spent in the visitor
+     */
+    public long getVisitorNanos() {
+        return visitorNanos;
+    }
+
+
+    /**
+     * Returns the time spent splitting lines, decoding or encoding records and verifying checksums, in nanoseconds.
+     * This is the elapsed time less the time spent waiting for I/O and in the visitor
+     * @return the time spent decoding or encoding records
+     */
+    public long getCodecNanos() {
+        return Math.max(0, elapsedNanos - ioNanos - visitorNanos);
+    }
+
+
+    /**
+     * Returns the number of data bytes that were decoded or encoded by the Vector API codec
+     * @return the number of data bytes that were decoded or encoded by the Vector API codec
+     */
+    public long getVectorBytes() {
+        return vectorBytes;
+    }
+
+
+    /**
+     * Returns the number of data bytes that were decoded 4 bytes at a time as a single long. This is always zero
+     * for a write
+     * @return the number of data bytes that were decoded as a single long
+     */
+    public long getWordBytes() {
+        return wordBytes;
+    }
+
+
+    /**
+     * Returns the number of data bytes that were decoded or encoded one byte at a time with the lookup tables.
+     * This is the fallback for short records, and for the tail of records that do not fill a whole word
+     * @return the number of data bytes that were decoded or encoded with the lookup tables
+     */
+    public long getTableBytes() {
+        return tableBytes;
+    }
+
+
+    /**
+     * Returns {@code true} if the checksum of each record was verified. This is always {@code false} for a write
+     * @return {@code true} if the checksum of each record was verified
+     */
+    public boolean isChecksumVerified() {
+        return checksumVerified;
+    }
+
+
+    @Override
+    @Nonnull
+    public String toString() {
+        return String.format("%d bytes, %d lines, %d records in %d ms (I/O %d ms, visitor %d ms, codec %d ms); " +
+                "%d vector, %d word and %d table bytes",
+            bytes,
+            lines,
+            getRecords(),
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            TimeUnit.NANOSECONDS.toMillis(ioNanos),
+            TimeUnit.NANOSECONDS.toMillis(visitorNanos),
+            TimeUnit.NANOSECONDS.toMillis(getCodecNanos()),
+            vectorBytes,
+            wordBytes,
+            tableBytes);
+    }
+
+
+    /**
+     * Count a single record, and attribute its data field to the hex codec that decodes or encodes it
+     * @param type          Type of the record
+     * @param address       Value of the address field
+     * @param length        Number of bytes in the data field
+     */
+    void addRecord(@Nonnull SRecord type, long address, int length) {
+        records[type.ordinal()]++;
+        addCoded(length, 1);
+
+        if (type.isData()) {
+            addSpan(address, length);
+        }
+    }
+
+
+    /**
+     * Count the records that a block of data is split into
+     * @param type          Type of the data records
+     * @param address       Address of the first byte of the block
+     * @param length        Number of bytes in the block. An empty block is written as a single empty record
+     * @param size          Maximum number of data bytes in each record
+     */
+    void addRecords(@Nonnull SRecord type, long address, int length, int size) {
+        int full = length / size;
+        int remainder = length % size;
+
+        records[type.ordinal()] += full + ((remainder == 0) && (full != 0) ? 0 : 1);
+        addCoded(size, full);
+        addCoded(remainder, 1);
+        addSpan(address, length);
+    }
+
+
+    /**
+     * Count data that has been read from, or written to, the file
+     * @param bytes         Number of bytes transferred
+     * @param nanos         Time spent waiting for the transfer
+     */
+    void addTransfer(long bytes, long nanos) {
+        this.bytes += bytes;
+        this.ioNanos += nanos;
+    }
+
+
+    void addLines(long lines) {
+        this.lines += lines;
+    }
+
+
+    void addElapsed(long nanos) {
+        elapsedNanos += nanos;
+    }
+
+
+    void addVisitor(long nanos) {
+        visitorNanos += nanos;
+    }
+
+
+    /**
+     * Add the counts from the measurements of part of a file, except for the elapsed time which is measured by
+     * the caller
+     * @param part          Measurements of part of the file
+     */
+    void merge(@Nonnull SMetrics part) {
+        for (int i = 0; i < records.length; i++) {
+            records[i] += part.records[i];
+        }
+
+        bytes += part.bytes;
+        lines += part.lines;
+        ioNanos += part.ioNanos;
+        visitorNanos += part.visitorNanos;
+        vectorBytes += part.vectorBytes;
+        wordBytes += part.wordBytes;
+        tableBytes += part.tableBytes;
+        lowestAddress = Math.min(lowestAddress, part.lowestAddress);
+        highestAddress = Math.max(highestAddress, part.highestAddress);
+    }
+
+
+    private void addSpan(long address, int length) {
+        if (length != 0) {
+            lowestAddress = Math.min(lowestAddress, address);
+            highestAddress = Math.max(highestAddress, address + length - 1);
+        }
+    }
+
+
+    private void addCoded(int length, int count) {
+        int vector = Hex.vectorBytes(length);
+        int word = (reading ? Hex.wordBytes(length) : 0);
+
+        vectorBytes += (long) vector * count;
+        wordBytes += (long) word * count;
+        tableBytes += (long) (length - vector - word) * count;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.tymefly.srec;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Receives measurements of each load or write so that an application can see where the time goes. Metrics are
+ * only collected if a listener has been set, and they are only reported if the operation succeeds. All methods
+ * have empty default implementations so a listener need only override the events it is interested in.
+ * @see SLoader#withMetrics(SMetricsListener)
+ * @see SWriter#setMetricsListener(SMetricsListener)
+ */
+public interface SMetricsListener {
+    /**
+     * Called after a file has been loaded, visited or converted
+     * @param source        Path of the file that was read
+     * @param metrics       Measurements of the load
+     */
+    default void onLoad(@Nonnull String source, @Nonnull SMetrics metrics) {
+    }
+
+
+    /**
+     * Called after a writer has been closed
+     * @param destination   Absolute path of the file that was written
+     * @param metrics       Measurements of the write
+     */
+    default void onWrite(@Nonnull String destination, @Nonnull SMetrics metrics) {
+    }
+}
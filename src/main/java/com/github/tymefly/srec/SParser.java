@@ -0,0 +1,421 @@
+package com.github.tymefly.srec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Byte level, pull based, parser for S-Record files.
+ * Lines of ASCII data are read from a {@link LineReader} and each record is decoded in place, so no objects are
+ * created for individual lines or bytes. Each call to {@link #next()} decodes one record; the decoded values remain
+ * valid until the next call.
+ */
+class SParser implements RecordParser {
+    private static final int MAX_DATA_SIZE = 255;
+    private static final int DIGITS_IN_BYTE = 2;
+    private static final int MASK_BYTE = 0xff;
+
+    // Indexes into SRecord lines
+    private static final int INDEX_S = 0;
+    private static final int INDEX_TYPE = 1;
+    private static final int INDEX_COUNT = 2;
+    private static final int INDEX_ADDRESS = 4;
+
+    private static final int SIZE_PREFIX = 4;                  // 'S', type and count
+    private static final int SIZE_MINIMUM = 8;                 // Prefix and a 16 bit address
+
+    private final LineReader reader;
+    private final byte[] data = new byte[MAX_DATA_SIZE];
+    private byte[] line;
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber;
+    private boolean hasTerminated = false;
+    private int dataRecords = 0;
+    private boolean fragment = false;
+    private boolean deferCounts = false;
+    private boolean verifyChecksums = true;
+
+    private SRecord type;
+    private long address;
+    private int dataLength;
+    private int sum;
+
+
+    /**
+     * Create a parser that reads lines of ASCII data from a {@code reader}
+     * @param reader        Source of the S-Record data
+     */
+    SParser(@Nonnull LineReader reader) {
+        this.reader = reader;
+    }
+
+
+    /**
+     * Create a parser that copies ASCII data from a {@code channel} into a reusable buffer
+     * @param channel       Source of the S-Record data. The caller is responsible for closing the channel
+     * @return a parser for the data in the {@code channel}
+     */
+    @Nonnull
+    static SParser forChannel(@Nonnull ReadableByteChannel channel) {
+        return new SParser(LineReader.forChannel(channel));
+    }
+
+
+    /**
+     * Create a parser that reads ASCII characters from a {@code reader}. Characters that are not ASCII are
+     * replaced, so they will be reported as invalid records
+     * @param reader        Source of the S-Record data. The caller is responsible for closing the reader
+     * @return a parser for the data in the {@code reader}
+     */
+    @Nonnull
+    static SParser forReader(@Nonnull Reader reader) {
+        return new SParser(LineReader.forReader(reader));
+    }
+
+
+    /**
+     * Create a parser that reads ASCII data directly from a memory mapped {@code file}.
+     * Large files are mapped in windows so that they are not limited by the maximum size of a single buffer
+     * @param file          Source of the S-Record data. The caller is responsible for closing the channel
+     * @return a parser for the data in the {@code file}
+     * @throws IOException if the size of the file could not be read
+     */
+    @Nonnull
+    static SParser forMappedFile(@Nonnull FileChannel file) throws IOException {
+        return new SParser(LineReader.forMappedFile(file));
+    }
+
+
+    /**
+     * Create a parser that reads ASCII data directly from a memory mapped region of a {@code file}.
+     * @param file          Source of the S-Record data. The caller is responsible for closing the channel
+     * @param start         Offset into the file of the first byte to parse
+     * @param end           Offset into the file of the first byte after the region to parse
+     * @return a parser for the data in the {@code file}
+     */
+    @Nonnull
+    static SParser forMappedFile(@Nonnull FileChannel file, long start, long end) {
+        return new SParser(LineReader.forMappedFile(file, start, end));
+    }
+
+
+    /**
+     * Configure this parser to read a fragment of a file. The end of a fragment is not required to have a
+     * terminating record and, unless {@link #withState(int, boolean)} is called, count records are not checked
+     * because the number of data records before the fragment is not known.
+     * @param firstLine     Number of the line before the first line in the fragment
+     * @return this parser
+     */
+    @Nonnull
+    SParser asFragment(int firstLine) {
+        this.reader.setLineNumber(firstLine);
+        this.fragment = true;
+        this.deferCounts = true;
+
+        return this;
+    }
+
+
+    /**
+     * Configure this parser to skip checksum verification. This should only be used for trusted data that has
+     * already been validated; all other checks are still made.
+     * @param verifyChecksums   {@code false} if checksums should not be verified
+     * @return this parser
+     */
+    @Override
+    @Nonnull
+    public SParser withChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+
+        return this;
+    }
+
+
+    /**
+     * Set the state of the parser as if it had already parsed some records.
+     * @param dataRecords       Number of data records that have already been parsed
+     * @param hasTerminated     {@code true} if a terminating record has already been parsed
+     * @return this parser
+     */
+    @Nonnull
+    SParser withState(int dataRecords, boolean hasTerminated) {
+        this.dataRecords = dataRecords;
+        this.hasTerminated = hasTerminated;
+        this.deferCounts = false;
+
+        return this;
+    }
+
+
+    /**
+     * Decode the next record from the source.
+     * @return  {@code true} if a record was decoded or {@code false} if the end of the data has been reached
+     * @throws IOException if the data could not be read
+     * @throws SRecordException if the data is not a valid S-Record file
+     */
+    @Override
+    public boolean next() throws IOException {
+        boolean found = reader.next();
+
+        if (found) {
+            line = reader.getLine();
+            lineStart = reader.getStart();
+            lineEnd = reader.getEnd();
+            lineNumber = reader.getLineNumber();
+            parseLine();
+        } else if (!hasTerminated && !fragment) {
+            throw new SRecordException("Unexpected EOF");
+        }
+
+        return found;
+    }
+
+
+    /**
+     * Returns the type of the last decoded record
+     * @return the type of the last decoded record
+     */
+    @Override
+    @Nonnull
+    public SRecord getType() {
+        return type;
+    }
+
+
+    /**
+     * Returns the address field of the last decoded record
+     * @return the address field of the last decoded record
+     */
+    @Override
+    public long getAddress() {
+        return address;
+    }
+
+
+    /**
+     * Returns the data field of the last decoded record. This buffer is reused by the parser and is only valid
+     * until the next call to {@link #next()}. Only the first {@link #getDataLength()} bytes are used.
+     * @return the data field of the last decoded record.
+     */
+    @Override
+    @Nonnull
+    public byte[] getData() {
+        return data;
+    }
+
+
+    /**
+     * Returns the number of bytes in the data field of the last decoded record
+     * @return the number of bytes in the data field of the last decoded record
+     */
+    @Override
+    public int getDataLength() {
+        return dataLength;
+    }
+
+
+    /**
+     * Returns the text of the last decoded record, which is assumed to be a header, without any trailing NULs
+     * @return the text of the last decoded record
+     */
+    @Nonnull
+    String getHeader() {
+        int index = dataLength;
+
+        while (index > 0) {
+            if (data[index - 1] != 0) {
+                break;
+            } else {
+                index--;
+            }
+        }
+
+        return new String(data, 0, index, StandardCharsets.US_ASCII);
+    }
+
+
+    /**
+     * Pass the last decoded record to the {@code visitor}
+     * @param visitor       Visitor to notify
+     */
+    @Override
+    public void publish(@Nonnull SVisitor visitor) {
+        switch (type) {
+            case HEADER:
+                visitor.onHeader(getHeader());
+                break;
+
+            case DATA_16:
+            case DATA_24:
+            case DATA_32:
+                visitor.onData(address, data, 0, dataLength);
+                break;
+
+            case COUNT_16:
+            case COUNT_24:
+                visitor.onCount((int) address);
+                break;
+
+            case START_ADDRESS_16:
+            case START_ADDRESS_24:
+            case START_ADDRESS_32:
+                visitor.onStart(address);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * Returns the line number of the last decoded record
+     * @return the line number of the last decoded record
+     */
+    @Override
+    public int getLineNumber() {
+        return reader.getLineNumber();
+    }
+
+
+    /**
+     * Parse a single SRecord. This can be any type of record. The line is guaranteed to have at least one character
+     */
+    private void parseLine() {
+        int length = lineEnd - lineStart;
+
+        if (length < SIZE_MINIMUM) {
+            throw new SRecordException("Record on line %d has been truncated", lineNumber);
+        }
+
+        int typeValue = Hex.decodeNibble(line[lineStart + INDEX_TYPE]);
+        SRecord recordType = SRecord.fromType(typeValue);
+        int addressSize = recordType.getAddressSize();
+        int overhead = addressSize + 1;                         // address + checksum
+        int count = decodeByte(INDEX_COUNT);
+        int expectedLength = (count * DIGITS_IN_BYTE) + SIZE_PREFIX;
+
+        if ((count >= overhead) && (length < expectedLength)) {
+            throw new SRecordException("Record on line %d has been truncated", lineNumber);
+        }
+
+        byte start = line[lineStart + INDEX_S];
+        boolean valid = !hasTerminated && ((start == 'S') || (start == 's'));
+        valid = valid && (typeValue >= 0) && (count >= overhead);
+        valid = valid && (length == expectedLength);
+        valid = valid && decodeAddress(addressSize) && decodeData(addressSize, count - overhead);
+        valid = valid && (!verifyChecksums || verifyChecksum(count));
+
+        if (!valid) {
+            throw new SRecordException("Invalid record on line %d", lineNumber);
+        }
+
+        type = recordType;
+        validateSequence(typeValue);
+    }
+
+
+    /**
+     * Decode the address field of the current line. The decoded bytes start the running {@link #sum}
+     * @param addressSize   Number of bytes in the address field
+     * @return {@code true} only if the address is valid hex
+     */
+    private boolean decodeAddress(int addressSize) {
+        int index = INDEX_ADDRESS;
+        int invalid = 0;
+        long value = 0;
+
+        sum = 0;
+
+        for (int i = 0; i < addressSize; i++) {
+            int next = decodeByte(index);
+
+            invalid |= next;
+            sum += next;
+            value = (value << Byte.SIZE) | (next & MASK_BYTE);
+            index += DIGITS_IN_BYTE;
+        }
+
+        address = value;
+
+        return (invalid >= 0);
+    }
+
+
+    /**
+     * Decode the data field of the current line. The decoded bytes are added to the running {@link #sum}
+     * @param addressSize   Number of bytes in the address field
+     * @param size          Number of bytes in the data field
+     * @return {@code true} only if the data is valid hex
+     */
+    private boolean decodeData(int addressSize, int size) {
+        int index = lineStart + INDEX_ADDRESS + (addressSize * DIGITS_IN_BYTE);
+        int total = Hex.decodeBytes(line, index, data, size);
+
+        dataLength = size;
+        sum += total;
+
+        return (total >= 0);
+    }
+
+
+    /**
+     * Verify the checksum of the current line. The checksum is the one's complement of the sum of the
+     * count, address and data bytes, which have already been added to {@link #sum} as they were decoded.
+     * @param count     Value of the count field of the current line
+     * @return {@code true} only if the checksum is valid
+     */
+    private boolean verifyChecksum(int count) {
+        int checksum = decodeByte(INDEX_COUNT + (count * DIGITS_IN_BYTE));
+
+        return (checksum >= 0) && ((byte) ~(sum + count) == (byte) checksum);
+    }
+
+
+    private int decodeByte(int index) {
+        return Hex.decodeByte(line, lineStart + index);
+    }
+
+
+    /**
+     * Check that the record is valid given the records that came before it
+     * @param typeValue     The numeric record type
+     */
+    private void validateSequence(int typeValue) {
+        switch (type) {
+            case HEADER:
+                break;
+
+            case DATA_16:
+            case DATA_24:
+            case DATA_32:
+                dataRecords++;
+                break;
+
+            case RESERVED:
+                throw new SRecordException("S4 records are reserved. See line %d", lineNumber);
+
+            case COUNT_16:
+            case COUNT_24:
+                if (!deferCounts && (address != dataRecords)) {
+                    throw new SRecordException("Unexpected count. Got 0x%02x, expected 0x%02x", dataRecords, address);
+                }
+                break;
+
+            case START_ADDRESS_32:
+            case START_ADDRESS_24:
+            case START_ADDRESS_16:
+                hasTerminated = true;
+                break;
+
+            default:
+                throw new SRecordException("Invalid SRecord type %d on line %d", typeValue, lineNumber);
+        }
+    }
+}
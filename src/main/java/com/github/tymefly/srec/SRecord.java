@@ -11,26 +11,28 @@ import javax.annotation.Nonnull;
  * Enumeration of SRecord types.
  */
 public enum SRecord {
-    INVALID(-1),
-    HEADER(0),
-    DATA_16(1),
-    DATA_24(2),
-    DATA_32(3),
-    RESERVED(4),
-    COUNT_16(5),
-    COUNT_24(6),
-    START_ADDRESS_32(7),
-    START_ADDRESS_24(8),
-    START_ADDRESS_16(9);
+    INVALID(-1, 2),
+    HEADER(0, 2),
+    DATA_16(1, 2),
+    DATA_24(2, 3),
+    DATA_32(3, 4),
+    RESERVED(4, 2),
+    COUNT_16(5, 2),
+    COUNT_24(6, 3),
+    START_ADDRESS_32(7, 4),
+    START_ADDRESS_24(8, 3),
+    START_ADDRESS_16(9, 2);
 
     private static final Map<Integer, SRecord> FROM_TYPE =
         Stream.of(values())
             .collect(Collectors.toMap(SRecord::getType, e -> e));
 
     private final int type;
+    private final int addressSize;
 
-    SRecord(int type) {
+    SRecord(int type, int addressSize) {
         this.type = type;
+        this.addressSize = addressSize;
     }
 
 
@@ -43,6 +45,33 @@ public enum SRecord {
     }
 
 
+    /**
+     * Returns the number of bytes in the address field of this SRecord
+     * @return the number of bytes in the address field of this SRecord
+     */
+    public int getAddressSize() {
+        return addressSize;
+    }
+
+
+    /**
+     * Returns {@code true} if this SRecord holds data
+     * @return {@code true} if this SRecord holds data
+     */
+    public boolean isData() {
+        return (this == DATA_16) || (this == DATA_24) || (this == DATA_32);
+    }
+
+
+    /**
+     * Returns {@code true} if this SRecord terminates the file
+     * @return {@code true} if this SRecord terminates the file
+     */
+    public boolean isTermination() {
+        return (this == START_ADDRESS_16) || (this == START_ADDRESS_24) || (this == START_ADDRESS_32);
+    }
+
+
     /**
      * Look up an SRecord by its type.
      * {@link #INVALID} is returned if {@code type} does not match a valid SRecord
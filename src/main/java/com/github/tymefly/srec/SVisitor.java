@@ -0,0 +1,56 @@
+package com.github.tymefly.srec;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Push style visitor for the records in an S-Record file. The parser calls these methods, in file order, as each
+ * record is decoded so that files of any size can be processed in constant memory. All methods have empty
+ * default implementations so a visitor need only override the events it is interested in.
+ * @see SLoader#visit(SVisitor)
+ */
+public interface SVisitor {
+    /**
+     * Called for each header (S0) record
+     * @param header        Text in the header, without any trailing NUL characters
+     */
+    default void onHeader(@Nonnull String header) {
+    }
+
+
+    /**
+     * Called for each data record. The {@code buffer} is reused by the parser so it is only valid for
+     * the duration of this call; visitors that need to keep the data must copy it.
+     * @param address       Address of the first byte of data
+     * @param buffer        Buffer that contains the data
+     * @param offset        Index into the {@code buffer} of the first byte of data
+     * @param length        Number of bytes of data
+     */
+    default void onData(long address, @Nonnull byte[] buffer, int offset, int length) {
+    }
+
+
+    /**
+     * Called for each count (S5 or S6) record after it has been validated
+     * @param count         Number of data records before the count record
+     */
+    default void onCount(int count) {
+    }
+
+
+    /**
+     * Called for the terminating (S7, S8 or S9) record, or for an Intel HEX start address (03 or 05) record
+     * @param address       Start address given by the terminating record
+     */
+    default void onStart(long address) {
+    }
+
+
+    /**
+     * Called if the file is invalid or can not be read. After this method returns the {@code error} is thrown to
+     * the caller and no more methods will be called.
+     * @param error         The error that stopped the parser
+     */
+    default void onError(@Nonnull SRecordException error) {
+    }
+}
@@ -1,183 +1,753 @@
 package com.github.tymefly.srec;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 
 /**
- * Write a 16 bit S-Record file
+ * Write an S-Record file with 16, 24 or 32 bit addresses
  */
 public class SWriter implements AutoCloseable {
-    private static final int BITS_IN_NIBBLE = 4;
-    private static final int MASK_BYTE = 0xff;
-    private static final int MASK_SHORT = 0xffff;
-    private static final int MASK_LSN = 0xf;
+    private static final int BATCH_SIZE = 256 * 1024;
+    private static final int MAX_BATCH_BLOCKS = 4096;
+    private static final int MAX_PENDING_BATCHES = 16;
+    private static final int MAX_DATA_SIZE = 255;
+    private static final int MAX_COUNT_16 = 0xffff;
+    private static final int MAX_COUNT_24 = 0xffffff;
+    private static final int BITS_IN_BYTE = 8;
+    private static final byte RECORD_START = 'S';
+    private static final long NO_ADDRESS = -1;
 
-    private static final char[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7',
-                                        '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+    /** Largest number of data bytes that fit in a record with a 16 bit address */
+    public static final int MAX_RECORD_SIZE = MAX_DATA_SIZE - SRecord.DATA_16.getAddressSize() - 1;
 
-    /** Data class to hold individual Data records. */
+    /** Largest possible encoded line: 'S', type, count, the counted bytes and the line separator */
+    private static final int MAX_LINE_SIZE = 2 + 2 * (1 + MAX_DATA_SIZE) + RecordOutput.LINE_SEPARATOR.length;
+
+
+    /** Data class to hold a block of data. The bytes are not copied; they are read with absolute gets */
     private static class Data {
         private final int address;
-        private final byte[] bytes;
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
 
-        private Data(int address, @Nonnull byte[] bytes, int start, int length) {
+        private Data(int address, @Nonnull ByteBuffer bytes, int offset, int length) {
             this.address = address;
-            this.bytes = Arrays.copyOfRange(bytes, start, start + length);
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
         }
     }
 
     private final File destination;
     private final List<String> headers;
     private final List<Data> data;
+    private final boolean streaming;
+    private final RecordOutput output;
+    private SRecord dataType = SRecord.DATA_16;
+    private SRecord terminatorType = SRecord.START_ADDRESS_16;
+    private int recordSize = MAX_RECORD_SIZE;
+    private boolean countRecord = false;
+    private long startAddress = NO_ADDRESS;
+    private Executor executor = null;
+    private long lowestAddress = Long.MAX_VALUE;
+    private long endAddress = 0;
+    private long records = 0;
+    private SMetricsListener listener = null;
+    private FlightEvents flight = null;
 
 
     /**
-     * Create a writer object for 16-bit SRecord files
+     * Create a writer object for SRecord files. All the records are buffered in memory until the writer
+     * is closed. By default the file has 16 bit addresses.
      * @param destination       File that will be created or overwritten.
      */
     public SWriter(@Nonnull File destination) {
+        this(destination, false);
+    }
+
+
+    private SWriter(@Nonnull File destination, boolean streaming) {
         this.destination = destination;
         this.headers = new ArrayList<>();
         this.data = new ArrayList<>();
+        this.streaming = streaming;
+        this.output = new RecordOutput(destination, "SRecord");
+    }
+
+
+    /**
+     * Create a writer object for SRecord files that encodes records as they are added. Headers and data are
+     * written to the file immediately, and only the count and terminating records are deferred until the writer is
+     * closed, so files of any size can be written in constant memory. All headers must be added before any data.
+     * By default the file has 16 bit addresses.
+     * @param destination       File that will be created or overwritten.
+     * @return a streaming writer
+     * @throws SRecordException if the file could not be created
+     */
+    @Nonnull
+    public static SWriter streaming(@Nonnull File destination) {
+        SWriter writer = new SWriter(destination, true);
+
+        writer.flight = FlightEvents.write(destination.getAbsolutePath());
+        writer.output.measure(writer.flight.isEnabled());
+        writer.output.write(writer.output::open);
+
+        return writer;
+    }
+
+
+    /**
+     * Set the size of the addresses in the data and terminating records. 16 bit addresses are written as S1 and S9
+     * records, 24 bit addresses as S2 and S8 records and 32 bit addresses as S3 and S7 records. The default is
+     * 16 bits. Larger addresses leave less space for data, so the record size is reduced if it would no longer fit.
+     * Addresses are treated as unsigned values, and data must not extend past the largest address of the size.
+     * The size is applied as records are encoded, so for a streaming writer it should be set before any data is
+     * added.
+     * @param bits          Number of bits in each address; 16, 24 or 32
+     * @throws IllegalArgumentException if {@code bits} is not 16, 24 or 32, or if data that has already been added
+     *              or the start address does not fit in addresses of this size
+     * @see #setRecordSize(int)
+     */
+    public void setAddressSize(int bits) {
+        SRecord data = findType(bits, true);
+        SRecord terminator = findType(bits, false);
+
+        if ((data == null) || (terminator == null)) {
+            throw new IllegalArgumentException("Invalid address size " + bits);
+        } else if (endAddress > addressLimit(data)) {
+            throw new IllegalArgumentException("Data has already been added above the " + bits + " bit address range");
+        } else if (startAddress >= addressLimit(data)) {
+            throw new IllegalArgumentException("The start address is above the " + bits + " bit address range");
+        }
+
+        dataType = data;
+        terminatorType = terminator;
+        recordSize = Math.min(recordSize, maxRecordSize());
+    }
+
+
+    /**
+     * Set the maximum number of data bytes in each data record. Data that is added in larger blocks is split
+     * into consecutive records of this size. The default is {@link #MAX_RECORD_SIZE}. The size is applied as records
+     * are encoded, so for a streaming writer it should be set before any data is added.
+     * @param size          Maximum number of data bytes in each record; typically 16, 32, 64 or 252. With 24 and 32
+     *                      bit addresses the largest size is 251 and 250 respectively
+     * @throws IllegalArgumentException if {@code size} is not in the range 1 to the largest size for the address size
+     */
+    public void setRecordSize(int size) {
+        if ((size < 1) || (size > maxRecordSize())) {
+            throw new IllegalArgumentException("Invalid record size " + size);
+        }
+
+        recordSize = size;
+    }
+
+
+    /**
+     * Write a count record (S5, or S6 if there are more than 65535 data records) before the terminating record.
+     * By default no count record is written. A count record can hold at most 16777215 data records; a streaming
+     * writer rejects data that would exceed this as it is added, and a buffered writer checks it before any data
+     * is written.
+     * @param countRecord   {@code true} if a count record should be written
+     * @throws SRecordException if a streaming writer has already written too many data records for a count record
+     */
+    public void setCountRecord(boolean countRecord) {
+        if (countRecord) {
+            checkCount(records);
+        }
+
+        this.countRecord = countRecord;
+    }
+
+
+    /**
+     * Set the start address that is written to the terminating record. By default this is the lowest address
+     * of any data, or 0 if there is no data. Like data, the start address must fit in the address size, which
+     * should be set first.
+     * @param address       Start address of the program
+     * @throws IllegalArgumentException if the start address does not fit in the address size
+     * @see #setAddressSize(int)
+     */
+    public void setStartAddress(int address) {
+        long value = Integer.toUnsignedLong(address);
+
+        RecordOutput.checkStartAddress(value, addressLimit(dataType));
+
+        this.startAddress = value;
+    }
+
+
+    /**
+     * Encode data records in parallel. Data is encoded in batches on the {@code executor} and the batches are
+     * written to the file in the order that the data was added, so the file is the same as if it had been encoded
+     * sequentially. A streaming writer can not keep a reference to the caller's data once {@link #withData} has
+     * returned, so it only encodes large blocks of data in parallel.
+     * @param executor      Executor used to encode batches of records, or {@code null} to encode sequentially
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+
+    /**
+     * Measure the write and report the results to the {@code listener} when the writer is closed. For a streaming
+     * writer only the records that are added after the listener is set are measured.
+     * @param listener      Listener that is passed the metrics, or {@code null} to stop reporting them
+     * @see SMetrics
+     */
+    public void setMetricsListener(@Nullable SMetricsListener listener) {
+        this.listener = listener;
+        output.measure(listener != null);
     }
 
 
     /**
      * Add a header to the SRecord file. Multiple headers can be added
-     * @param header        Text in the header
+     * @param header        Text in the header; at most {@link #MAX_RECORD_SIZE} characters
+     * @throws IllegalArgumentException if the header is too long to fit in a single record
+     * @throws IllegalStateException if this is a streaming writer and data has already been added
      */
     public void withHeader(@Nonnull String header) {
-        headers.add(header);
+        int length = header.getBytes(StandardCharsets.US_ASCII).length;
+
+        if (length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Header of " + length + " characters is too long");
+        } else if (!streaming) {
+            headers.add(header);
+        } else if (lowestAddress != Long.MAX_VALUE) {
+            throw new IllegalStateException("Headers must be added before data");
+        } else {
+            output.write(() -> writeHeader(header));
+        }
     }
 
 
     /**
-     * Add a data line to the SRecord file. Multiple records can be added
-     * @param address       Start address of the record
+     * Add data to the SRecord file. If there is more data than will fit in a single record then it is split
+     * into as many records as required. Multiple blocks of data can be added
+     * @param address       Start address of the data
      * @param bytes         Data bytes
      * @param start         Index of first byte in {@code bytes} to be added to the SRecord
      * @param length        Number of bytes to be added to the SRecord
      * @throws ArrayIndexOutOfBoundsException if {@code start < 0} or {@code start + length > bytes.length}
-     * @throws IllegalArgumentException if {@code length < 0}
+     * @throws IllegalArgumentException if {@code length < 0}, or if the data extends past the largest address
+     * @see #setAddressSize(int)
      */
     public void withData(int address, @Nonnull byte[] bytes, int start, int length) {
-        data.add(new Data(address, bytes, start, length));
+        if (!streaming) {
+            addData(new Data(address, ByteBuffer.wrap(Arrays.copyOfRange(bytes, start, start + length)), 0, length));
+        } else if (length < 0) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        } else if ((start < 0) || (start + length > bytes.length)) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + start + " + " + length);
+        } else {
+            addData(new Data(address, ByteBuffer.wrap(bytes), start, length));
+        }
     }
 
 
+    /**
+     * Add the remaining bytes in a buffer to the SRecord file. The buffer may be a heap, direct or memory mapped
+     * buffer, and the data is read directly from it without being copied. A streaming writer encodes the data before
+     * this method returns; otherwise the writer keeps a reference to the buffer and reads it when the writer is
+     * closed, so the content of the buffer must not be changed until then. The position and limit of the buffer are
+     * not changed.
+     * If there is more data than will fit in a single record then it is split into as many records as required.
+     * @param address       Start address of the data
+     * @param bytes         Buffer that contains the data between its position and its limit
+     * @throws IllegalArgumentException if the data extends past the largest address
+     * @see #setAddressSize(int)
+     */
+    public void withData(int address, @Nonnull ByteBuffer bytes) {
+        addData(new Data(address, bytes.duplicate(), bytes.position(), bytes.remaining()));
+    }
+
+
+    /**
+     * Add the whole of a raw binary file to the SRecord file.
+     * @param address       Address of the first byte of the file
+     * @param source        Binary file to add
+     * @throws SRecordException if the file could not be read
+     * @see #withBinary(int, File, long, long)
+     */
+    public void withBinary(int address, @Nonnull File source) {
+        withBinary(address, source, 0, source.length());
+    }
+
+
+    /**
+     * Add a region of a raw binary file to the SRecord file. The file is memory mapped in chunks, and each chunk
+     * is added as if by {@link #withData(int, ByteBuffer)}, so the data is never copied onto the heap. A streaming
+     * writer converts files of any size in constant memory; otherwise the mapped chunks are kept until the writer is
+     * closed. Chunks are split on record boundaries, so the record size should be set first.
+     * @param address       Address of the first byte of the region
+     * @param source        Binary file to add
+     * @param offset        Offset into the file of the first byte to add
+     * @param length        Number of bytes to add
+     * @throws IllegalArgumentException if the region is not within the file, or if it extends past the largest
+     *              address
+     * @throws SRecordException if the file could not be read
+     */
+    public void withBinary(int address, @Nonnull File source, long offset, long length) {
+        checkRange(address, length);
+
+        RecordOutput.readBinary(source, offset, length, recordSize,
+            (position, chunk) -> withData((int) (address + position), chunk));
+    }
+
+
+    /**
+     * Returns a visitor that adds each record it is passed to this writer; headers are added with
+     * {@link #withHeader(String)}, data with {@link #withData(int, byte[], int, int)} and the start address with
+     * {@link #setStartAddress(int)}. This allows a file to be converted in a single pass, for example from
+     * Intel HEX with {@link SLoader#withIntelHex()}. Only the least significant 32 bits of each address are used.
+     * @return a visitor that adds records to this writer
+     */
+    @Nonnull
+    public SVisitor asVisitor() {
+        return new SVisitor() {
+            @Override
+            public void onHeader(@Nonnull String header) {
+                withHeader(header);
+            }
+
+            @Override
+            public void onData(long address, @Nonnull byte[] buffer, int offset, int length) {
+                withData((int) address, buffer, offset, length);
+            }
+
+            @Override
+            public void onStart(long address) {
+                setStartAddress((int) address);
+            }
+        };
+    }
+
+
+    private void addData(@Nonnull Data block) {
+        checkRange(block.address, block.length);
+
+        if (streaming && countRecord) {
+            checkCount(records + recordCount(block.length, recordSize));
+        }
+
+        if (!streaming) {
+            data.add(block);
+        } else if ((executor != null) && (block.length > BATCH_SIZE)) {
+            output.write(() -> writeBatches(Collections.singletonList(block)));
+        } else {
+            output.write(() -> writeData(block.address, block.bytes, block.offset, block.length));
+        }
+
+        lowestAddress = Math.min(lowestAddress, Integer.toUnsignedLong(block.address));
+        endAddress = Math.max(endAddress, Integer.toUnsignedLong(block.address) + block.length);
+    }
+
+
+    /**
+     * Check that data fits in the address range of the data records, so that splitting it into records never
+     * wraps an address back to 0
+     * @param address       Address of the first byte of data
+     * @param length        Number of bytes of data
+     * @throws IllegalArgumentException if the data extends past the largest address
+     */
+    private void checkRange(int address, long length) {
+        RecordOutput.checkRange(Integer.toUnsignedLong(address), length, addressLimit(dataType));
+    }
+
+
+    /**
+     * Returns the number of addresses that can be held by a record type
+     * @param type          Data record type
+     * @return the number of addresses
+     */
+    private static long addressLimit(@Nonnull SRecord type) {
+        return 1L << (type.getAddressSize() * BITS_IN_BYTE);
+    }
+
+
+    /**
+     * Write any buffered records, followed by the count and terminating records, and close the file.
+     * Closing a writer that has already been closed has no effect.
+     * @throws SRecordException if the file could not be written
+     */
     @Override
     public void close() {
-        try (
-            Writer writer = new BufferedWriter(new FileWriter(destination))
-        ) {
-            int startAddress = Integer.MAX_VALUE;
+        if (!output.isClosed()) {
+            String path = destination.getAbsolutePath();
+            FlightEvents event = (flight == null ? FlightEvents.write(path) : flight);
+
+            output.measure(event.isEnabled());
+            output.close(this::finish);
 
-            for (String header : headers) {
-                writeHeader(writer, header);
+            SMetrics metrics = output.getMetrics();
+
+            if (metrics != null) {
+                metrics.addLines(metrics.getRecords());
+                event.commit(metrics);
             }
 
-            for (Data line : data) {
-                writeData(writer, line);
-                startAddress = Math.min(startAddress, line.address);
+            if (listener != null) {
+                listener.onWrite(path, metrics);
             }
+        }
+    }
+
+
+    private void finish() throws IOException {
+        if (countRecord) {
+            long total = records;
 
-            if (data.isEmpty()) {
-                startAddress = 0;
+            for (Data block : data) {
+                total += recordCount(block.length, recordSize);
             }
 
-            writeStartAddress(writer, startAddress);
-        } catch (IOException e) {
-            throw new SRecordException("Failed to write SRecord file " + destination.getAbsolutePath(), e);
+            checkCount(total);
         }
+
+        for (String header : headers) {
+            writeHeader(header);
+        }
+
+        if (executor == null) {
+            for (Data block : data) {
+                writeData(block.address, block.bytes, block.offset, block.length);
+            }
+        } else {
+            writeBatches(data);
+        }
+
+        if (countRecord) {
+            writeCount();
+        }
+
+        writeStartAddress();
     }
 
-    private void writeHeader(@Nonnull Writer writer, @Nonnull String header) throws IOException {
-        writeLine(writer, SRecord.HEADER, 0, header.getBytes(StandardCharsets.US_ASCII));
+
+    /**
+     * Returns the data or terminating record type for an address size
+     * @param bits          Number of bits in the address
+     * @param isData        {@code true} for a data record type, {@code false} for a terminating record type
+     * @return the record type, or {@code null} if there is no record type for the address size
+     */
+    @Nullable
+    private static SRecord findType(int bits, boolean isData) {
+        SRecord result = null;
+
+        for (SRecord type : SRecord.values()) {
+            boolean matches = (isData ? type.isData() : type.isTermination());
+
+            if (matches && (type.getAddressSize() * BITS_IN_BYTE == bits)) {
+                result = type;
+            }
+        }
+
+        return result;
     }
 
 
-    private void writeData(@Nonnull Writer writer, @Nonnull Data data) throws IOException {
-        writeLine(writer, SRecord.DATA_16, data.address, data.bytes);
+    private int maxRecordSize() {
+        return MAX_DATA_SIZE - dataType.getAddressSize() - 1;
     }
 
 
-    private void writeStartAddress(@Nonnull Writer writer, int address) throws IOException {
-        writeLine(writer, SRecord.START_ADDRESS_16, address, new byte[0]);
+    private void writeHeader(@Nonnull String header) throws IOException {
+        byte[] text = header.getBytes(StandardCharsets.US_ASCII);
+
+        writeLine(SRecord.HEADER, 0, ByteBuffer.wrap(text), 0, text.length);
+        count(SRecord.HEADER, text.length);
     }
 
 
-    private void writeLine(@Nonnull Writer writer,
-                           @Nonnull SRecord recordType,
-                           int address,
-                           @Nonnull byte[] data) throws IOException {
-        StringBuilder line = new StringBuilder("S");
-        int byteCount = data.length + 3;                 // 2 bytes for address + 1 for checksum
-        int checksum = 0;
+    /**
+     * Encode data as one or more data records of at most {@link #recordSize} bytes. The records refer to the
+     * {@code data} buffer directly so the data is not copied
+     * @param address       Address of the first byte of data
+     * @param data          Buffer that contains the data
+     * @param offset        Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     * @throws IOException if the file could not be written
+     */
+    private void writeData(int address, @Nonnull ByteBuffer data, int offset, int length) throws IOException {
+        int position = 0;
+
+        do {
+            int size = Math.min(recordSize, length - position);
+
+            writeLine(dataType, address + position, data, offset + position, size);
+            records++;
+            position += size;
+        } while (position < length);
+
+        SMetrics metrics = output.getMetrics();
+
+        if (metrics != null) {
+            metrics.addRecords(dataType, Integer.toUnsignedLong(address), length, recordSize);
+        }
+    }
+
+
+    /**
+     * Encode blocks of data on the {@link #executor} and write them to the file in order. Blocks are split into
+     * batches at record boundaries, so the records are the same as if they were encoded by
+     * {@link #writeData(int, ByteBuffer, int, int)}. The blocks have been checked by {@link #checkRange(int, long)}
+     * when they were added, so neither the batches nor the metrics see a wrapped address. This method does not
+     * return until all the data has been written. If writing fails then batches that have not been written are
+     * cancelled.
+     * @param blocks        Data to write
+     * @throws IOException if the file could not be written
+     * @throws SRecordException if a batch could not be encoded
+     */
+    private void writeBatches(@Nonnull List<Data> blocks) throws IOException {
+        Deque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+
+        output.flush();
+
+        try {
+            submitBatches(pending, blocks);
+
+            while (!pending.isEmpty()) {
+                output.writeBuffer(join(pending.removeFirst()));
+            }
+        } finally {
+            pending.forEach(b -> b.cancel(false));
+        }
+    }
+
+
+    /**
+     * Split blocks of data into batches at record boundaries and start encoding them. The data records are counted
+     * and measured as they are split.
+     * @param pending       Batches that have not been written to the file, in file order
+     * @param blocks        Data to write
+     * @throws IOException if the file could not be written
+     */
+    private void submitBatches(@Nonnull Deque<CompletableFuture<ByteBuffer>> pending, @Nonnull List<Data> blocks)
+            throws IOException {
+        List<Data> batch = new ArrayList<>();
+        int batchSize = 0;
+        int size = recordSize;
+        SMetrics metrics = output.getMetrics();
+
+        for (Data block : blocks) {
+            int position = 0;
+
+            do {
+                int space = ((BATCH_SIZE - batchSize) / size) * size;
+
+                if ((space == 0) || (batch.size() == MAX_BATCH_BLOCKS)) {
+                    submit(pending, batch, size);
+                    batch = new ArrayList<>();
+                    batchSize = 0;
+                    space = (BATCH_SIZE / size) * size;
+                }
+
+                int length = Math.min(space, block.length - position);
+
+                batch.add(new Data(block.address + position, block.bytes, block.offset + position, length));
+                records += recordCount(length, size);
+                batchSize += length;
+
+                if (metrics != null) {
+                    metrics.addRecords(dataType, Integer.toUnsignedLong(block.address + position), length, size);
+                }
+
+                position += length;
+            } while (position < block.length);
+        }
 
-        address &= MASK_SHORT;
+        if (!batch.isEmpty()) {
+            submit(pending, batch, size);
+        }
+    }
 
-        line.append(recordType.getType());
-        checksum += appendHex(line, byteCount, 1);
-        checksum += appendHex(line, address, 2);
-        checksum += appendHex(line, data);
 
-        appendHex(line, ~checksum, 1);
+    /**
+     * Start encoding a batch of data. If there are too many batches waiting to be written then the oldest is
+     * written first, which limits the amount of memory used by encoded batches.
+     * @param pending       Batches that have not been written to the file, in file order
+     * @param batch         Data to encode
+     * @param size          Maximum number of data bytes in each record
+     * @throws IOException if the file could not be written
+     */
+    private void submit(@Nonnull Deque<CompletableFuture<ByteBuffer>> pending, @Nonnull List<Data> batch, int size)
+            throws IOException {
+        SRecord type = dataType;
 
-        writer.write(line.toString());
-        writer.write(System.lineSeparator());
+        if (pending.size() == MAX_PENDING_BATCHES) {
+            output.writeBuffer(join(pending.removeFirst()));
+        }
+
+        pending.addLast(CompletableFuture.supplyAsync(() -> encode(batch, type, size), executor));
     }
 
 
     /**
-     * Append a number of hex digits to the {@code line} from an int
-     * @param line      buffer to extend
-     * @param value     An integer
-     * @param bytes     The number of bytes to write: 1 for a single byte, 2 for a short, 4 for the full integer
-     * @return          Sum of all the bytes written to the buffer
+     * Wait for a batch to be encoded
+     * @param batch         Batch that is being encoded
+     * @return a buffer that contains the encoded records
+     * @throws SRecordException if the batch could not be encoded
      */
-    private int appendHex(@Nonnull StringBuilder line, int value, int bytes) {
-        int sum = 0;
+    @Nonnull
+    static ByteBuffer join(@Nonnull CompletableFuture<ByteBuffer> batch) {
+        try {
+            return batch.join();
+        } catch (CompletionException e) {
+            throw new SRecordException("Failed to encode records", (e.getCause() == null ? e : e.getCause()));
+        }
+    }
+
 
-        while (bytes-- != 0 ) {
-            int n = (value >> (bytes << 3)) & MASK_BYTE;
-            char msb = HEX[n >> BITS_IN_NIBBLE];
-            char lsb = HEX[n & MASK_LSN];
+    /**
+     * Encode a batch of data into a new buffer
+     * @param batch         Data to encode
+     * @param type          Type of the data records
+     * @param size          Maximum number of data bytes in each record
+     * @return a buffer that contains the encoded records, ready to be written
+     */
+    @Nonnull
+    private static ByteBuffer encode(@Nonnull List<Data> batch, @Nonnull SRecord type, int size) {
+        int overhead = 2 + 2 * (1 + type.getAddressSize() + 1) + RecordOutput.LINE_SEPARATOR.length;
+        int capacity = 0;
 
-            line.append(msb).append(lsb);
-            sum += n;
+        for (Data block : batch) {
+            capacity += (recordCount(block.length, size) * overhead) + (2 * block.length);
         }
 
-        return sum;
+        ByteBuffer target = ByteBuffer.allocate(capacity);
+
+        for (Data block : batch) {
+            int position = 0;
+
+            do {
+                int length = Math.min(size, block.length - position);
+
+                encodeLine(target, type, block.address + position, block.bytes, block.offset + position, length);
+                position += length;
+            } while (position < block.length);
+        }
+
+        target.flip();
+
+        return target;
     }
 
 
     /**
-     * Append the hex values of {@code data} to {@code line}
-     * @param line      buffer to extend
-     * @param data      Data to write to buffer
-     * @return          Sum of all the values written to the buffer
+     * Returns the number of records needed for a block of data. An empty block is written as a single empty record
+     * @param length        Number of bytes in the block
+     * @param size          Maximum number of data bytes in each record
+     * @return the number of records needed for a block of data
      */
-    private int appendHex(@Nonnull StringBuilder line, @Nonnull byte[] data) {
-        int sum = 0;
+    private static int recordCount(int length, int size) {
+        return Math.max(1, (length + size - 1) / size);
+    }
 
-        for (byte n : data) {
-            char msb = HEX[(n >> BITS_IN_NIBBLE) & MASK_LSN];
-            char lsb = HEX[n & MASK_LSN];
 
-            line.append(msb).append(lsb);
-            sum += n;
+    /**
+     * Check that a count record can hold a number of data records
+     * @param total         Number of data records
+     * @throws SRecordException if there are too many data records for a count record
+     */
+    private static void checkCount(long total) {
+        if (total > MAX_COUNT_24) {
+            throw new SRecordException("%d data records is too many for a count record", total);
         }
+    }
+
+
+    private void writeCount() throws IOException {
+        checkCount(records);
+
+        SRecord type = (records > MAX_COUNT_16 ? SRecord.COUNT_24 : SRecord.COUNT_16);
+
+        writeLine(type, (int) records, RecordOutput.EMPTY, 0, 0);
+        count(type, 0);
+    }
+
+
+    private void writeStartAddress() throws IOException {
+        long address = startAddress;
+
+        if (address == NO_ADDRESS) {
+            address = (lowestAddress == Long.MAX_VALUE ? 0 : lowestAddress);
+        }
+
+        writeLine(terminatorType, (int) address, RecordOutput.EMPTY, 0, 0);
+        count(terminatorType, 0);
+    }
+
+
+    private void count(@Nonnull SRecord type, int length) {
+        SMetrics metrics = output.getMetrics();
+
+        if (metrics != null) {
+            metrics.addRecord(type, 0, length);
+        }
+    }
+
+
+    /**
+     * Encode a record into the output buffer. The buffer is flushed to the file when it is full
+     * @param recordType    Type of the record
+     * @param address       Value of the address field
+     * @param data          Buffer that contains the data field
+     * @param offset        Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     * @throws IOException if the file could not be written
+     */
+    private void writeLine(@Nonnull SRecord recordType,
+                           int address,
+                           @Nonnull ByteBuffer data,
+                           int offset,
+                           int length) throws IOException {
+        encodeLine(output.reserve(MAX_LINE_SIZE), recordType, address, data, offset, length);
+    }
+
+
+    /**
+     * Encode a record into a buffer
+     * @param target        Buffer that the record is written to. This must have space for the whole line
+     * @param recordType    Type of the record, which also gives the size of the address
+     * @param address       Value of the address field
+     * @param data          Buffer that contains the data field
+     * @param offset        Index into {@code data} of the first byte to write
+     * @param length        Number of bytes to write
+     */
+    private static void encodeLine(@Nonnull ByteBuffer target,
+                                   @Nonnull SRecord recordType,
+                                   int address,
+                                   @Nonnull ByteBuffer data,
+                                   int offset,
+                                   int length) {
+        int addressSize = recordType.getAddressSize();
+        int byteCount = length + addressSize + 1;       // address + data + checksum
+        int checksum = 0;
+
+        target.put(RECORD_START);
+        target.put((byte) ('0' + recordType.getType()));
+        checksum += Hex.encodeValue(target, byteCount, 1);
+        checksum += Hex.encodeValue(target, address, addressSize);
+        checksum += Hex.encodeBytes(target, data, offset, length);
 
-        return sum;
+        Hex.encodeValue(target, ~checksum, 1);
+        target.put(RecordOutput.LINE_SEPARATOR);
     }
 }
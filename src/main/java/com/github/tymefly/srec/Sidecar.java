@@ -0,0 +1,310 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+
+/**
+ * Binary copy of a loaded file that is saved next to it, so that later loads can copy the decoded segments from a
+ * memory mapped file rather than parse the ASCII records again. Each segment is copied into a heap array, as
+ * {@link SImage} segments can be extended, so a restored image uses as much memory as a parsed one. The sidecar records the size and last modified time
+ * of the source file, and the loader settings that change the result, and is only used while they all match.
+ * The whole sidecar is covered by a CRC, so a damaged sidecar is ignored and replaced rather than trusted.
+ * <p>
+ * The sidecar is an optimisation, so failures to read or write it are not reported; the file is parsed instead.
+ * Sidecars are written to a temporary file and then moved into place, so a reader never sees a partial sidecar.
+ * <p>
+ * All values are big endian:
+ * <pre>
+ *   long      magic number, which includes the format version
+ *   long      size of the source file
+ *   long      last modified time of the source file, in milliseconds
+ *   string    loader settings
+ *   long      first address, last address and span of the data
+ *   int       number of headers, followed by each header as a string
+ *   int       number of segments
+ *   byte      fill byte of the image
+ *   long, int start address and length of each segment
+ *   bytes     data of each segment, in address order
+ *   long      CRC32 of everything before it
+ * </pre>
+ * Strings are an int length followed by that many bytes of UTF-8.
+ */
+final class Sidecar {
+    /** Suffix that is added to the name of the source file to give the default sidecar */
+    static final String SUFFIX = ".idx";
+
+    private static final long MAGIC = 0x5352_4543_4944_5801L;          // "SRECIDX" and version 1
+    private static final int SEGMENT_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int FIXED_SIZE = (7 * Long.BYTES) + (3 * Integer.BYTES) + Byte.BYTES;
+
+    private final File file;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final String settings;
+
+
+    private Sidecar(@Nonnull File file, @Nonnull BasicFileAttributes source, @Nonnull String settings) {
+        this.file = file;
+        this.sourceSize = source.size();
+        this.sourceModified = source.lastModifiedTime().toMillis();
+        this.settings = settings;
+    }
+
+
+    /**
+     * Create a sidecar for the current state of a source file. The attributes of the source are read before it is
+     * parsed, so if the source changes while it is being parsed then the sidecar will not match the new file
+     * @param file          Sidecar file
+     * @param source        Source file
+     * @param settings      Loader settings that change the result
+     * @return the sidecar, or {@code null} if the attributes of the source file could not be read
+     */
+    @Nullable
+    static Sidecar forSource(@Nonnull File file, @Nonnull Path source, @Nonnull String settings) {
+        Sidecar sidecar;
+
+        try {
+            sidecar = new Sidecar(file, Files.readAttributes(source, BasicFileAttributes.class), settings);
+        } catch (IOException e) {
+            sidecar = null;
+        }
+
+        return sidecar;
+    }
+
+
+    /**
+     * Read the SReader from the sidecar
+     * @return the SReader, or {@code null} if the sidecar is missing, does not match the source file or is damaged
+     */
+    @Nullable
+    SReader read() {
+        SReader reader = null;
+
+        if (file.isFile() && file.length() <= Integer.MAX_VALUE) {
+            try (
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+            ) {
+                reader = decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+                reader = null;
+            }
+        }
+
+        return reader;
+    }
+
+
+    /**
+     * Save an SReader to the sidecar, replacing any sidecar that is already there. Images with more than 2 GiB of
+     * data are not saved
+     * @param reader        SReader to save
+     */
+    void write(@Nonnull SReader reader) {
+        List<SImage.Segment> segments = reader.getImage().getSegments();
+        ByteBuffer metadata = metadata(reader, segments);
+
+        if (metadata.remaining() + reader.getImage().size() + Long.BYTES <= Integer.MAX_VALUE) {
+            String name = file.getName() + '.' + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+            Path temp = file.getAbsoluteFile().toPath().resolveSibling(name);
+
+            try {
+                save(temp, metadata, segments);
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                delete(temp);
+            }
+        }
+    }
+
+
+    @Nullable
+    private SReader decode(@Nonnull MappedByteBuffer buffer) {
+        SReader reader = null;
+
+        if ((buffer.remaining() >= FIXED_SIZE) && (buffer.getLong() == MAGIC) && isIntact(buffer) && matches(buffer)) {
+            long first = buffer.getLong();
+            long last = buffer.getLong();
+            long span = buffer.getLong();
+            List<String> headers = new ArrayList<>();
+            int count = buffer.getInt();
+
+            for (int i = 0; i < count; i++) {
+                headers.add(getString(buffer));
+            }
+
+            SImage image = readImage(buffer);
+
+            reader = (image == null ? null : SReader.restore(headers, image, first, last, span));
+        }
+
+        return reader;
+    }
+
+
+    private boolean matches(@Nonnull ByteBuffer buffer) {
+        return (buffer.getLong() == sourceSize) &&
+            (buffer.getLong() == sourceModified) &&
+            settings.equals(getString(buffer));
+    }
+
+
+    /**
+     * Check the CRC of the whole sidecar. The position of the {@code buffer} is not changed
+     * @param buffer        Sidecar
+     * @return {@code true} if the sidecar has not been damaged
+     */
+    private static boolean isIntact(@Nonnull ByteBuffer buffer) {
+        ByteBuffer content = buffer.duplicate();
+        CRC32 crc = new CRC32();
+
+        content.position(0).limit(buffer.limit() - Long.BYTES);
+        crc.update(content);
+
+        return (crc.getValue() == buffer.getLong(buffer.limit() - Long.BYTES));
+    }
+
+
+    /**
+     * Read the segments of the image. The data of each segment is copied out of the {@code buffer}
+     * @param buffer        Sidecar, positioned at the number of segments
+     * @return the image, or {@code null} if the number of segments does not fit in the sidecar
+     */
+    @Nullable
+    private static SImage readImage(@Nonnull ByteBuffer buffer) {
+        int count = buffer.getInt();
+        byte fill = buffer.get();
+        SImage image = null;
+
+        if ((count >= 0) && (count <= buffer.remaining() / SEGMENT_ENTRY_SIZE)) {
+            long[] starts = new long[count];
+            int[] lengths = new int[count];
+
+            image = new SImage(fill);
+
+            for (int i = 0; i < count; i++) {
+                starts[i] = buffer.getLong();
+                lengths[i] = buffer.getInt();
+            }
+
+            for (int i = 0; i < count; i++) {
+                ByteBuffer data = buffer.duplicate();
+
+                data.limit(data.position() + lengths[i]);
+                image.addSegment(starts[i], data);
+                buffer.position(data.position());
+            }
+        }
+
+        return image;
+    }
+
+
+    private static void save(@Nonnull Path temp, @Nonnull ByteBuffer metadata, @Nonnull List<SImage.Segment> segments)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+
+        try (
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+        ) {
+            crc.update(metadata.duplicate());
+            write(channel, metadata);
+
+            for (SImage.Segment segment : segments) {
+                ByteBuffer data = segment.asByteBuffer();
+
+                crc.update(data.duplicate());
+                write(channel, data);
+            }
+
+            trailer.putLong(crc.getValue()).flip();
+            write(channel, trailer);
+            channel.force(false);
+        }
+    }
+
+
+    /**
+     * Returns everything in the sidecar before the data of the segments
+     * @param reader        SReader to save
+     * @param segments      Segments of the image
+     * @return a buffer that is ready to be written
+     */
+    @Nonnull
+    private ByteBuffer metadata(@Nonnull SReader reader, @Nonnull List<SImage.Segment> segments) {
+        byte[] settingsBytes = settings.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> headers = new ArrayList<>();
+        int size = FIXED_SIZE + settingsBytes.length + (segments.size() * SEGMENT_ENTRY_SIZE);
+
+        for (String header : reader.getHeaders()) {
+            byte[] text = header.getBytes(StandardCharsets.UTF_8);
+
+            headers.add(text);
+            size += Integer.BYTES + text.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size - Long.BYTES);
+
+        buffer.putLong(MAGIC).putLong(sourceSize).putLong(sourceModified);
+        buffer.putInt(settingsBytes.length).put(settingsBytes);
+        buffer.putLong(reader.getFirstAddress()).putLong(reader.getLastAddress()).putLong(reader.getSpan());
+        buffer.putInt(headers.size());
+        headers.forEach(h -> buffer.putInt(h.length).put(h));
+        buffer.putInt(segments.size()).put(reader.getImage().getFillByte());
+
+        for (SImage.Segment segment : segments) {
+            buffer.putLong(segment.getStartAddress()).putInt(segment.size());
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    private static void write(@Nonnull FileChannel channel, @Nonnull ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+
+    @Nonnull
+    private static String getString(@Nonnull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Delete a temporary file, if it was created. If it can not be deleted now then it is deleted when the JVM exits
+     * @param temp          Temporary file
+     */
+    private static void delete(@Nonnull Path temp) {
+        if (temp.toFile().exists() && !temp.toFile().delete()) {
+            temp.toFile().deleteOnExit();
+        }
+    }
+}
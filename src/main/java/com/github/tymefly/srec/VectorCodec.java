@@ -0,0 +1,66 @@
+package com.github.tymefly.srec;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Bulk hex codec that uses SIMD instructions through the Vector API. The Vector API needs Java 17, so this version
+ * of the class is never available and {@link Hex} always uses its scalar code. When the library is built with the
+ * {@code multi-release} profile the jar also contains a Java 17 version of this class, which is used if the
+ * application is started with {@code --add-modules jdk.incubator.vector}.
+ */
+final class VectorCodec {
+    private VectorCodec() {
+    }
+
+
+    /**
+     * Returns {@code true} if the Vector API can be used
+     * @return {@code true} if the Vector API can be used
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+
+    /**
+     * Returns the smallest number of bytes that are worth decoding or encoding with this codec
+     * @return the smallest number of bytes that are worth decoding or encoding with this codec
+     */
+    static int minimumLength() {
+        return Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Decode a run of pairs of ASCII hex digits
+     * @param source    ASCII characters
+     * @param index     Index into the {@code source} of the most significant digit of the first byte
+     * @param dest      Buffer that the decoded bytes are written to, starting at index 0
+     * @param length    Number of bytes to decode
+     * @return          Sum of the decoded bytes, or a negative value if any digit is not hex. Only the least
+     *                  significant 8 bits of the sum are significant
+     * @throws IllegalStateException always; this is only called if {@link #isAvailable()} returns {@code true}
+     * @see Hex#decodeBytes(byte[], int, byte[], int)
+     */
+    static int decode(@Nonnull byte[] source, int index, @Nonnull byte[] dest, int length) {
+        throw new IllegalStateException("VectorCodec.decode() called without the Vector API");
+    }
+
+
+    /**
+     * Encode a run of bytes as pairs of upper case ASCII hex digits
+     * @param buffer    Buffer that the digits are written to
+     * @param data      Buffer that contains the bytes to encode. The position of this buffer is not changed
+     * @param offset    Index into {@code data} of the first byte to encode
+     * @param length    Number of bytes to encode
+     * @return          Sum of all the bytes that were encoded. Only the least significant 8 bits are significant
+     * @throws IllegalStateException always; this is only called if {@link #isAvailable()} returns {@code true}
+     * @see Hex#encodeBytes(ByteBuffer, ByteBuffer, int, int)
+     */
+    static int encode(@Nonnull ByteBuffer buffer, @Nonnull ByteBuffer data, int offset, int length) {
+        throw new IllegalStateException("VectorCodec.encode() called without the Vector API");
+    }
+}
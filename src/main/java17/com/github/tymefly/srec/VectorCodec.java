@@ -0,0 +1,312 @@
+package com.github.tymefly.srec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Bulk hex codec that uses SIMD instructions through the Vector API. This is the Java 17 version of the class from
+ * the multi-release jar. The Vector API is an incubator module, so it is only resolved if the application is started
+ * with {@code --add-modules jdk.incubator.vector}. The module is looked up at run time, and the codec is checked
+ * against a known value, before any Vector API class is loaded; if either fails then {@link #isAvailable()} returns
+ * {@code false} and {@link Hex} uses its scalar code.
+ */
+final class VectorCodec {
+    private static final String MODULE = "jdk.incubator.vector";
+    private static final boolean AVAILABLE = probe();
+
+
+    private VectorCodec() {
+    }
+
+
+    /**
+     * Returns {@code true} if the Vector API can be used
+     * @return {@code true} if the Vector API can be used
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+
+    /**
+     * Returns the smallest number of bytes that are worth decoding or encoding with this codec; one full vector.
+     * This must only be called if the codec is available
+     * @return the smallest number of bytes that are worth decoding or encoding with this codec
+     */
+    static int minimumLength() {
+        return Kernel.LANES;
+    }
+
+
+    /**
+     * Decode a run of pairs of ASCII hex digits. This must only be called if the codec is available
+     * @param source    ASCII characters
+     * @param index     Index into the {@code source} of the most significant digit of the first byte
+     * @param dest      Buffer that the decoded bytes are written to, starting at index 0
+     * @param length    Number of bytes to decode
+     * @return          Sum of the decoded bytes, or a negative value if any digit is not hex. Only the least
+     *                  significant 8 bits of the sum are significant
+     */
+    static int decode(@Nonnull byte[] source, int index, @Nonnull byte[] dest, int length) {
+        return Kernel.decode(source, index, dest, length);
+    }
+
+
+    /**
+     * Encode a run of bytes as pairs of upper case ASCII hex digits. This must only be called if the codec is
+     * available
+     * @param buffer    Buffer that the digits are written to
+     * @param data      Buffer that contains the bytes to encode. The position of this buffer is not changed
+     * @param offset    Index into {@code data} of the first byte to encode
+     * @param length    Number of bytes to encode
+     * @return          Sum of all the bytes that were encoded. Only the least significant 8 bits are significant
+     */
+    static int encode(@Nonnull ByteBuffer buffer, @Nonnull ByteBuffer data, int offset, int length) {
+        return Kernel.encode(buffer, data, offset, length);
+    }
+
+
+    /**
+     * Check that the Vector API module has been resolved and that the codec gives the same results as the scalar
+     * code. The Vector API is still incubating, so a newer JVM may not have the methods that this class was
+     * compiled against
+     * @return {@code true} only if the codec can be used
+     */
+    private static boolean probe() {
+        boolean available;
+
+        try {
+            available = ModuleLayer.boot().findModule(MODULE).isPresent() && Kernel.selfTest();
+        } catch (LinkageError | RuntimeException e) {
+            available = false;
+        }
+
+        return available;
+    }
+
+
+    /** The Vector API code. This class is only loaded once the module has been found */
+    private static final class Kernel {
+        private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+        private static final int LANES = SPECIES.length();
+        private static final int DIGITS_IN_BYTE = 2;
+        private static final int BITS_IN_NIBBLE = 4;
+        private static final int MASK_NIBBLE = 0xf;
+        private static final int MASK_BYTE = 0xff;
+        private static final int LOWER_CASE = 'a' - 'A';
+        private static final int LETTER_OFFSET = 9;                    // ('A' & 0xf) + 9 == 10
+        private static final int DIGIT_TO_LETTER = 'A' - '9' - 1;
+        private static final int MAX_DIGIT = 9;
+        private static final int SCRATCH_SIZE = 256;
+
+        /** Select the even lanes of two vectors, which are the most significant digits of each byte */
+        private static final VectorShuffle<Byte> EVEN = VectorShuffle.fromOp(SPECIES, n -> unzip(n * 2));
+
+        /** Select the odd lanes of two vectors, which are the least significant digits of each byte */
+        private static final VectorShuffle<Byte> ODD = VectorShuffle.fromOp(SPECIES, n -> unzip(n * 2 + 1));
+
+        /** Interleave the first halves of two vectors */
+        private static final VectorShuffle<Byte> ZIP_FIRST = VectorShuffle.fromOp(SPECIES, n -> zip(n, 0));
+
+        /** Interleave the second halves of two vectors */
+        private static final VectorShuffle<Byte> ZIP_SECOND = VectorShuffle.fromOp(SPECIES, n -> zip(n, LANES / 2));
+
+        /** Buffers for data that is not in an accessible array. Writers may encode on several threads */
+        private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE * 3]);
+
+
+        private Kernel() {
+        }
+
+
+        /**
+         * Returns the index of the lane in a pair of vectors that is selected by a two vector rearrange. Negative
+         * indexes select from the second vector
+         * @param n         Index of the lane in the pair of vectors
+         * @return the index of the lane in a pair of vectors
+         */
+        private static int unzip(int n) {
+            return (n < LANES ? n : n - LANES - LANES);
+        }
+
+
+        private static int zip(int n, int first) {
+            int lane = first + (n / 2);
+
+            return ((n % 2) == 0 ? lane : lane - LANES);
+        }
+
+
+        private static boolean selfTest() {
+            byte[] digits = new byte[LANES * DIGITS_IN_BYTE];
+            byte[] decoded = new byte[LANES];
+            ByteBuffer encoded = ByteBuffer.allocate(LANES * DIGITS_IN_BYTE);
+            byte[] expected = new byte[LANES];
+            int sum = 0;
+
+            for (int i = 0; i < LANES; i++) {
+                expected[i] = (byte) (i * 37);
+                sum += expected[i];
+            }
+
+            int encodedSum = encode(encoded, ByteBuffer.wrap(expected), 0, LANES);
+
+            encoded.flip();
+            encoded.get(digits);
+
+            int decodedSum = decode(digits, 0, decoded, LANES);
+
+            return Arrays.equals(expected, decoded) &&
+                ((decodedSum & MASK_BYTE) == (sum & MASK_BYTE)) &&
+                ((encodedSum & MASK_BYTE) == (sum & MASK_BYTE)) &&
+                (decode(new byte[LANES * DIGITS_IN_BYTE], 0, decoded, LANES) < 0);
+        }
+
+
+        private static int decode(@Nonnull byte[] source, int index, @Nonnull byte[] dest, int length) {
+            ByteVector sums = ByteVector.zero(SPECIES);
+            boolean valid = true;
+            int i = 0;
+
+            for (; i + LANES <= length; i += LANES) {
+                int position = index + (i * DIGITS_IN_BYTE);
+                ByteVector first = ByteVector.fromArray(SPECIES, source, position);
+                ByteVector second = ByteVector.fromArray(SPECIES, source, position + LANES);
+                ByteVector high = first.rearrange(EVEN, second);
+                ByteVector low = first.rearrange(ODD, second);
+                VectorMask<Byte> highLetters = letters(high);
+                VectorMask<Byte> lowLetters = letters(low);
+
+                valid &= highLetters.or(digits(high)).and(lowLetters.or(digits(low))).allTrue();
+
+                ByteVector bytes = nibbles(high, highLetters).lanewise(VectorOperators.LSHL, BITS_IN_NIBBLE)
+                    .or(nibbles(low, lowLetters));
+
+                bytes.intoArray(dest, i);
+                sums = sums.add(bytes);
+            }
+
+            int total = sums.reduceLanes(VectorOperators.ADD) & MASK_BYTE;
+            int invalid = (valid ? 0 : Hex.INVALID);
+            int position = index + (i * DIGITS_IN_BYTE);
+
+            for (; i < length; i++) {
+                int value = Hex.decodeByte(source, position);
+
+                invalid |= value;
+                total += value;
+                dest[i] = (byte) value;
+                position += DIGITS_IN_BYTE;
+            }
+
+            return (invalid < 0 ? Hex.INVALID : total);
+        }
+
+
+        @Nonnull
+        private static VectorMask<Byte> digits(@Nonnull ByteVector chars) {
+            return chars.compare(VectorOperators.GE, (byte) '0')
+                .and(chars.compare(VectorOperators.LE, (byte) '9'));
+        }
+
+
+        @Nonnull
+        private static VectorMask<Byte> letters(@Nonnull ByteVector chars) {
+            ByteVector folded = chars.or((byte) LOWER_CASE);
+
+            return folded.compare(VectorOperators.GE, (byte) 'a')
+                .and(folded.compare(VectorOperators.LE, (byte) 'f'));
+        }
+
+
+        @Nonnull
+        private static ByteVector nibbles(@Nonnull ByteVector chars, @Nonnull VectorMask<Byte> letters) {
+            return chars.and((byte) MASK_NIBBLE)
+                .lanewise(VectorOperators.ADD, LETTER_OFFSET, letters);
+        }
+
+
+        private static int encode(@Nonnull ByteBuffer buffer, @Nonnull ByteBuffer data, int offset, int length) {
+            byte[] scratch = SCRATCH.get();
+            byte[] input = scratch;
+            int start = 0;
+            int total = 0;
+            int done = 0;
+
+            if (data.hasArray()) {
+                input = data.array();
+                start = data.arrayOffset() + offset;
+            }
+
+            while (done < length) {
+                int size = Math.min(SCRATCH_SIZE, length - done);
+                int vectored = (size / LANES) * LANES;
+
+                if (!data.hasArray()) {
+                    data.get(offset + done, scratch, 0, size);
+                }
+
+                total += encodeVectors(input, start + done, scratch, SCRATCH_SIZE, vectored);
+                buffer.put(scratch, SCRATCH_SIZE, vectored * DIGITS_IN_BYTE);
+
+                for (int i = vectored; i < size; i++) {
+                    byte value = input[start + done + i];
+
+                    Hex.encodeByte(buffer, value);
+                    total += value;
+                }
+
+                done += size;
+            }
+
+            return total;
+        }
+
+
+        /**
+         * Encode whole vectors of bytes into an array
+         * @param input     Bytes to encode
+         * @param start     Index into {@code input} of the first byte
+         * @param output    Array that the digits are written to
+         * @param index     Index into {@code output} of the first digit
+         * @param length    Number of bytes to encode. This must be a multiple of the number of lanes
+         * @return          Sum of all the bytes that were encoded
+         */
+        private static int encodeVectors(@Nonnull byte[] input,
+                                         int start,
+                                         @Nonnull byte[] output,
+                                         int index,
+                                         int length) {
+            ByteVector sums = ByteVector.zero(SPECIES);
+
+            for (int i = 0; i < length; i += LANES) {
+                ByteVector bytes = ByteVector.fromArray(SPECIES, input, start + i);
+                ByteVector high = digitsOf(bytes.lanewise(VectorOperators.LSHR, BITS_IN_NIBBLE));
+                ByteVector low = digitsOf(bytes.and((byte) MASK_NIBBLE));
+                int position = index + (i * DIGITS_IN_BYTE);
+
+                high.rearrange(ZIP_FIRST, low).intoArray(output, position);
+                high.rearrange(ZIP_SECOND, low).intoArray(output, position + LANES);
+                sums = sums.add(bytes);
+            }
+
+            return sums.reduceLanes(VectorOperators.ADD);
+        }
+
+
+        @Nonnull
+        private static ByteVector digitsOf(@Nonnull ByteVector nibbles) {
+            return nibbles.add((byte) '0')
+                .lanewise(VectorOperators.ADD, DIGIT_TO_LETTER, nibbles.compare(VectorOperators.GT, (byte) MAX_DIGIT));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nonnull;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link ChunkedParser}. The files are several MiB so that they are split into several chunks
+ */
+public class ChunkedParserTest {
+    private static final int RECORDS = 100_000;
+
+    private static ForkJoinPool pool;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+
+    /**
+     * A parallel load gives the same result as a sequential load
+     */
+    @Test
+    public void test_load() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", TestFiles.dataFile(new Random(1), RECORDS));
+        SReader expected = SReader.load(file);
+        SReader actual = new SLoader(file).withParallelism(pool).load();
+
+        assertTrue("File is too small to be split", file.length() > 4 * 1024 * 1024);
+        assertEquals("Headers", expected.getHeaders(), actual.getHeaders());
+        assertEquals("First", expected.getFirstAddress(), actual.getFirstAddress());
+        assertEquals("Last", expected.getLastAddress(), actual.getLastAddress());
+        assertArrayEquals("Data", expected.getData(), actual.getData());
+    }
+
+
+    /**
+     * A parallel visit passes the same records, in the same order, as a sequential visit
+     */
+    @Test
+    public void test_visit() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\r\n", TestFiles.dataFile(new Random(2), RECORDS));
+        TestFiles.RecordingVisitor expected = TestFiles.recorder();
+        TestFiles.RecordingVisitor actual = TestFiles.recorder();
+
+        new SLoader(file).visit(expected);
+        new SLoader(file).withParallelism(pool).visit(actual);
+
+        assertEquals("Events", expected.getEvents(), actual.getEvents());
+    }
+
+
+    /**
+     * A pool with a single thread parses more chunks than it parses ahead of the merge, and still passes the same
+     * records, and reports the same errors, as a sequential visit
+     */
+    @Test
+    public void test_singleThread() throws Exception {
+        List<String> lines = TestFiles.dataFile(new Random(8), RECORDS);
+        File file = TestFiles.write(folder.newFile(), "\n", lines);
+        TestFiles.RecordingVisitor expected = TestFiles.recorder();
+        TestFiles.RecordingVisitor actual = TestFiles.recorder();
+        ForkJoinPool single = new ForkJoinPool(1);
+
+        try {
+            new SLoader(file).visit(expected);
+            new SLoader(file).withParallelism(single).visit(actual);
+
+            assertEquals("Events", expected.getEvents(), actual.getEvents());
+
+            lines.set(90_000, TestFiles.corrupt(lines.get(90_000)));
+            TestFiles.write(file, "\n", lines);
+
+            assertEquals("Error", "Invalid record on line 90001", errorOf(new SLoader(file).withParallelism(single)));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+
+    /**
+     * An invalid checksum in a late chunk is reported on the same line as a sequential load
+     */
+    @Test
+    public void test_checksumError() throws Exception {
+        List<String> lines = TestFiles.dataFile(new Random(3), RECORDS);
+
+        lines.set(55_555, TestFiles.corrupt(lines.get(55_555)));
+
+        assertSameError(lines, "Invalid record on line 55556");
+    }
+
+
+    /**
+     * Errors in two chunks are reported from the first one
+     */
+    @Test
+    public void test_firstError() throws Exception {
+        List<String> lines = TestFiles.dataFile(new Random(4), RECORDS);
+
+        lines.set(20_000, TestFiles.corrupt(lines.get(20_000)));
+        lines.set(50_000, "S3zz");
+
+        assertSameError(lines, "Invalid record on line 20001");
+    }
+
+
+    /**
+     * A count record that does not match the number of data records is reported by a parallel load
+     */
+    @Test
+    public void test_countError() throws Exception {
+        List<String> lines = TestFiles.dataFile(new Random(5), RECORDS);
+
+        lines.set(lines.size() - 2, TestFiles.record(6, RECORDS - 1));
+
+        assertSameError(lines, String.format("Unexpected count. Got 0x%02x, expected 0x%02x", RECORDS, RECORDS - 1));
+    }
+
+
+    /**
+     * Data after the termination record, in a later chunk, is reported on the same line as a sequential load
+     */
+    @Test
+    public void test_dataAfterTermination() throws Exception {
+        List<String> lines = TestFiles.dataFile(new Random(6), RECORDS);
+
+        lines.add(10_000, TestFiles.record(7, 0));
+
+        assertSameError(lines, "Invalid record on line 10002");
+    }
+
+
+    /**
+     * A file without a termination record is reported by a parallel load
+     */
+    @Test
+    public void test_missingTermination() throws Exception {
+        List<String> lines = TestFiles.dataFile(new Random(7), RECORDS);
+
+        lines.remove(lines.size() - 1);
+
+        assertSameError(lines, "Unexpected EOF");
+    }
+
+
+    private void assertSameError(@Nonnull List<String> lines, @Nonnull String message) throws IOException {
+        File file = TestFiles.write(folder.newFile(), "\n", lines);
+
+        assertEquals("Sequential", message, errorOf(new SLoader(file)));
+        assertEquals("Parallel", message, errorOf(new SLoader(file).withParallelism(pool)));
+    }
+
+
+    /**
+     * Flight recorder events are sampled from the first chunk and every 4th chunk after it
+     */
+    @Test
+    public void test_sampled() {
+        assertTrue("First", ChunkedParser.isSampled(0));
+        assertFalse("Second", ChunkedParser.isSampled(1));
+        assertFalse("Fourth", ChunkedParser.isSampled(3));
+        assertTrue("Fifth", ChunkedParser.isSampled(4));
+        assertTrue("Ninth", ChunkedParser.isSampled(8));
+    }
+
+
+    @Nonnull
+    private static String errorOf(@Nonnull SLoader loader) {
+        String message = null;
+
+        try {
+            loader.load();
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            message = e.getMessage();
+        }
+
+        return message;
+    }
+}
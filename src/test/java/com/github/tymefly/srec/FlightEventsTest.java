@@ -0,0 +1,107 @@
+package com.github.tymefly.srec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Unit tests for {@link FlightEvents}. The tests are compiled for Java 8, so recordings are driven by reflection
+ */
+public class FlightEventsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * No event is recorded while there is no recording
+     */
+    @Test
+    public void test_notRecording() {
+        assertFalse("Load", FlightEvents.load("file.s19").isEnabled());
+        assertFalse("Write", FlightEvents.write("file.s19").isEnabled());
+        assertFalse("Chunk", FlightEvents.chunk("file.s19", 0, 100).isEnabled());
+        assertFalse("None", FlightEvents.none().isEnabled());
+    }
+
+
+    /**
+     * Committing an event that is not recorded has no effect
+     */
+    @Test
+    public void test_commit() {
+        FlightEvents.load("file.s19").commit(new SMetrics(true, true));
+        FlightEvents.chunk("file.s19", 0, 100).commit(10, 10);
+    }
+
+
+    /**
+     * Events that are enabled in a recording are recorded with the file that was read, and events that are
+     * disabled are not started
+     */
+    @Test
+    public void test_recording() throws Exception {
+        assumeTrue("JFR is not available", isAvailable());
+
+        File dump = folder.newFile("events.jfr");
+        Class<?> recordingType = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingType.getConstructor().newInstance();
+
+        try (Closeable closeable = (Closeable) recording) {
+            recordingType.getMethod("enable", String.class).invoke(recording, "com.github.tymefly.srec.Load");
+            recordingType.getMethod("disable", String.class).invoke(recording, "com.github.tymefly.srec.Write");
+            recordingType.getMethod("start").invoke(recording);
+
+            FlightEvents load = FlightEvents.load("file.s19");
+
+            assertTrue("Load", load.isEnabled());
+            assertFalse("Write", FlightEvents.write("file.s19").isEnabled());
+
+            load.commit(new SMetrics(true, true));
+            recordingType.getMethod("stop").invoke(recording);
+            recordingType.getMethod("dump", Path.class).invoke(recording, dump.toPath());
+        }
+
+        List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+            .getMethod("readAllEvents", Path.class)
+            .invoke(null, dump.toPath());
+
+        assertEquals("Events", 1, events.size());
+        assertEquals("Name", "com.github.tymefly.srec.Load", nameOf(events.get(0)));
+        assertEquals("File", "file.s19", events.get(0).getClass().getMethod("getValue", String.class)
+            .invoke(events.get(0), "file"));
+    }
+
+
+    private static boolean isAvailable() throws Exception {
+        boolean available;
+
+        try {
+            available = (Boolean) Class.forName("jdk.jfr.FlightRecorder").getMethod("isAvailable").invoke(null);
+        } catch (ClassNotFoundException e) {
+            available = false;
+        }
+
+        return available;
+    }
+
+
+    @Nonnull
+    private static String nameOf(@Nonnull Object event) throws Exception {
+        Object type = event.getClass().getMethod("getEventType").invoke(event);
+
+        return (String) type.getClass().getMethod("getName").invoke(type);
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.tymefly.srec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Unit tests for {@link Hex}
+ */
+public class HexTest {
+    private static final int MAX_LENGTH = 256;
+    private static final int MAX_OFFSET = 8;
+    private static final String DIGITS = "0123456789ABCDEFabcdef";
+    private static final String INVALID = "/:@G`g \u007f\u0080\u00b0\u00ff";
+
+
+    /**
+     * Every length of valid digits at every alignment decodes to the same bytes and sum as the lookup table
+     */
+    @Test
+    public void test_decodeValid() {
+        Random random = new Random(1);
+
+        for (int offset = 0; offset < MAX_OFFSET; offset++) {
+            for (int length = 0; length <= MAX_LENGTH; length++) {
+                byte[] source = digits(random, offset, length);
+
+                assertDecode(source, offset, length);
+            }
+        }
+    }
+
+
+    /**
+     * A single invalid character in any position is detected
+     */
+    @Test
+    public void test_decodeInvalid() {
+        Random random = new Random(2);
+
+        for (int offset = 0; offset < MAX_OFFSET; offset++) {
+            for (int length = 1; length <= MAX_LENGTH; length++) {
+                byte[] source = digits(random, offset, length);
+                int position = offset + random.nextInt(length * 2);
+
+                source[position] = (byte) INVALID.charAt(random.nextInt(INVALID.length()));
+
+                assertEquals("Offset " + offset + ", length " + length,
+                    Hex.INVALID, Hex.decodeBytes(source, offset, new byte[length], length));
+            }
+        }
+    }
+
+
+    /**
+     * Every character is classified in the same way as the lookup table
+     */
+    @Test
+    public void test_everyCharacter() {
+        for (int i = 0; i < 256; i++) {
+            byte[] source = "00000000".getBytes(StandardCharsets.US_ASCII);
+
+            source[5] = (byte) i;
+
+            assertDecode(source, 0, 4);
+        }
+    }
+
+
+    /**
+     * The number of bytes decoded as words is a whole number of words
+     */
+    @Test
+    public void test_wordBytes() {
+        assertEquals("Short", 0, Hex.wordBytes(3));
+        assertEquals("Whole", 16, Hex.wordBytes(16));
+        assertEquals("Partial", 16, Hex.wordBytes(19));
+    }
+
+
+    @Nonnull
+    private static byte[] digits(@Nonnull Random random, int offset, int length) {
+        byte[] source = new byte[offset + (length * 2) + random.nextInt(3)];
+
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (byte) DIGITS.charAt(random.nextInt(DIGITS.length()));
+        }
+
+        return source;
+    }
+
+
+    private static void assertDecode(@Nonnull byte[] source, int offset, int length) {
+        byte[] expected = new byte[length];
+        byte[] actual = new byte[length];
+        int sum = 0;
+        boolean valid = true;
+
+        for (int i = 0; i < length; i++) {
+            int value = Hex.decodeByte(source, offset + (i * 2));
+
+            valid &= (value >= 0);
+            sum += value;
+            expected[i] = (byte) value;
+        }
+
+        int result = Hex.decodeBytes(source, offset, actual, length);
+
+        if (valid) {
+            assertEquals("Sum at offset " + offset + ", length " + length, sum & 0xff, result & 0xff);
+            assertArrayEquals("Data at offset " + offset + ", length " + length, expected, actual);
+        } else {
+            assertEquals("Invalid at offset " + offset + ", length " + length, Hex.INVALID, result);
+        }
+    }
+}
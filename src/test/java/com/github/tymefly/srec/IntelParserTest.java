@@ -0,0 +1,99 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link IntelParser}
+ */
+public class IntelParserTest {
+    private static final String EOF = TestFiles.intel(1, 0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Extended linear addresses are applied to the data records that follow them
+     */
+    @Test
+    public void test_linear() throws Exception {
+        List<String> events = visit(
+            TestFiles.intel(0, 0x10, (byte) 1),
+            TestFiles.intel(4, 0, (byte) 0x80, (byte) 0x01),
+            TestFiles.intel(0, 0xfffe, (byte) 2, (byte) 3),
+            TestFiles.intel(5, 0, (byte) 0x80, (byte) 0x01, (byte) 0x00, (byte) 0x20),
+            EOF);
+
+        assertEquals("Events", Arrays.asList("data 10 01", "data 8001fffe 0203", "start 80010020"), events);
+    }
+
+
+    /**
+     * Extended segment addresses are applied to the data records that follow them, and a segment start address
+     * is presented as a physical address
+     */
+    @Test
+    public void test_segment() throws Exception {
+        List<String> events = visit(
+            TestFiles.intel(2, 0, (byte) 0x12, (byte) 0x34),
+            TestFiles.intel(0, 0x0010, (byte) 1),
+            TestFiles.intel(3, 0, (byte) 0x10, (byte) 0x00, (byte) 0x00, (byte) 0x08),
+            EOF);
+
+        assertEquals("Events", Arrays.asList("data 12350 01", "start 10008"), events);
+    }
+
+
+    /**
+     * Invalid checksums and unknown record types are reported on the line that they are on
+     */
+    @Test
+    public void test_invalidRecords() throws Exception {
+        assertError("Invalid record on line 2",
+            TestFiles.intel(0, 0, (byte) 1), TestFiles.corrupt(TestFiles.intel(0, 1, (byte) 2)), EOF);
+        assertError("Invalid Intel HEX record type 6 on line 1", TestFiles.intel(6, 0), EOF);
+        assertError("Invalid record on line 1", TestFiles.intel(4, 0, (byte) 1), EOF);
+    }
+
+
+    /**
+     * A file without an end of file record is rejected
+     */
+    @Test
+    public void test_missingEof() throws Exception {
+        assertError("Unexpected EOF", TestFiles.intel(0, 0, (byte) 1));
+    }
+
+
+    @Nonnull
+    private List<String> visit(@Nonnull String... lines) throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\r\n", Arrays.asList(lines));
+        TestFiles.RecordingVisitor visitor = TestFiles.recorder();
+
+        new SLoader(file).withIntelHex().visit(visitor);
+
+        return visitor.getEvents();
+    }
+
+
+    private void assertError(@Nonnull String expected, @Nonnull String... lines) throws Exception {
+        try {
+            visit(lines);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", expected, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link IntelWriter}
+ */
+public class IntelWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Records do not cross a 64 KiB boundary, and an extended linear address record is written when the upper
+     * part of the address changes
+     */
+    @Test
+    public void test_linear() throws Exception {
+        File file = folder.newFile();
+
+        try (
+            IntelWriter writer = new IntelWriter(file)
+        ) {
+            writer.setRecordSize(4);
+            writer.setStartAddress(0x12345678);
+            writer.withData(0x1fffe, new byte[] { 1, 2, 3, 4 }, 0, 4);
+        }
+
+        assertEquals("Lines",
+            Arrays.asList(TestFiles.intel(4, 0, (byte) 0, (byte) 1),
+                          TestFiles.intel(0, 0xfffe, (byte) 1, (byte) 2),
+                          TestFiles.intel(4, 0, (byte) 0, (byte) 2),
+                          TestFiles.intel(0, 0, (byte) 3, (byte) 4),
+                          TestFiles.intel(5, 0, (byte) 0x12, (byte) 0x34, (byte) 0x56, (byte) 0x78),
+                          TestFiles.intel(1, 0)),
+            Files.readAllLines(file.toPath()));
+    }
+
+
+    /**
+     * Segment addresses are written for data in the first 1 MiB, and a start address is written as CS:IP
+     */
+    @Test
+    public void test_segment() throws Exception {
+        File file = folder.newFile();
+
+        try (
+            IntelWriter writer = new IntelWriter(file)
+        ) {
+            writer.setSegmentAddressing(true);
+            writer.setStartAddress(0x12345);
+            writer.withData(0x12340, ByteBuffer.wrap(new byte[] { 1 }));
+        }
+
+        assertEquals("Lines",
+            Arrays.asList(TestFiles.intel(2, 0, (byte) 0x10, (byte) 0),
+                          TestFiles.intel(0, 0x2340, (byte) 1),
+                          TestFiles.intel(3, 0, (byte) 0x10, (byte) 0, (byte) 0x23, (byte) 0x45),
+                          TestFiles.intel(1, 0)),
+            Files.readAllLines(file.toPath()));
+    }
+
+
+    /**
+     * Data that can not be written with the selected addressing is rejected
+     */
+    @Test
+    public void test_addressRange() throws Exception {
+        try (
+            IntelWriter writer = new IntelWriter(folder.newFile())
+        ) {
+            assertRejected(writer, 0xfffffff0, "0x11 bytes at 0xfffffff0 extends past the end of the address range");
+
+            writer.setSegmentAddressing(true);
+
+            assertRejected(writer, 0xffff0, "0x11 bytes at 0xffff0 extends past the end of the address range");
+        }
+    }
+
+
+    /**
+     * A start address that can not be written with the selected addressing is rejected
+     */
+    @Test
+    public void test_startAddressRange() throws Exception {
+        try (
+            IntelWriter writer = new IntelWriter(folder.newFile())
+        ) {
+            writer.setStartAddress(0x100000);
+
+            try {
+                writer.setSegmentAddressing(true);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Selected", "Start address 0x100000 is past the end of the address range", e.getMessage());
+            }
+
+            writer.setStartAddress(0xfffff);
+            writer.setSegmentAddressing(true);
+
+            try {
+                writer.setStartAddress(0x100000);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Set", "Start address 0x100000 is past the end of the address range", e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * A binary file is converted to Intel HEX that loads back to the same data
+     */
+    @Test
+    public void test_binary() throws Exception {
+        File binary = folder.newFile();
+        File file = folder.newFile();
+        byte[] data = new byte[0x30000];
+
+        new Random(11).nextBytes(data);
+        Files.write(binary.toPath(), data);
+
+        try (
+            IntelWriter writer = new IntelWriter(file)
+        ) {
+            writer.setRecordSize(32);
+            writer.withBinary(0x7fff0, binary);
+        }
+
+        SReader reader = new SLoader(file).withIntelHex().load();
+
+        assertEquals("First", 0x7fff0, reader.getFirstAddress());
+        assertArrayEquals("Data", data, reader.getData());
+    }
+
+
+    /**
+     * Closing a writer a second time has no effect
+     */
+    @Test
+    public void test_closeTwice() throws Exception {
+        File file = folder.newFile();
+        IntelWriter writer = new IntelWriter(file);
+
+        writer.withData(0x100, new byte[] { 1 }, 0, 1);
+        writer.close();
+        writer.close();
+
+        List<String> lines = Files.readAllLines(file.toPath());
+
+        assertEquals("Lines", Arrays.asList(TestFiles.intel(0, 0x100, (byte) 1), TestFiles.intel(1, 0)), lines);
+    }
+
+
+    private static void assertRejected(@Nonnull IntelWriter writer, int address, @Nonnull String message) {
+        try {
+            writer.withData(address, new byte[17], 0, 17);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Message", message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SCache}
+ */
+public class SCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * A second load of an unchanged file returns the same SReader
+     */
+    @Test
+    public void test_hit() throws Exception {
+        File file = file(0x100, 16);
+        SCache cache = new SCache(1024);
+
+        SReader first = cache.load(file);
+        SReader second = cache.load(file.getPath());
+
+        assertSame("Reader", first, second);
+        assertEquals("Hits", 1, cache.getHits());
+        assertEquals("Misses", 1, cache.getMisses());
+        assertEquals("Size", 1, cache.size());
+        assertEquals("Bytes", 16, cache.getBytes());
+    }
+
+
+    /**
+     * A file that has changed is loaded again, and replaces the cached copy
+     */
+    @Test
+    public void test_changed() throws Exception {
+        File file = file(0x100, 16);
+        SCache cache = new SCache(1024);
+
+        SReader first = cache.load(file);
+
+        write(file, 0x200, 32);
+
+        SReader second = cache.load(file);
+
+        assertNotSame("Reader", first, second);
+        assertEquals("First", 0x200, second.getFirstAddress());
+        assertEquals("Misses", 2, cache.getMisses());
+        assertEquals("Size", 1, cache.size());
+        assertEquals("Bytes", 32, cache.getBytes());
+    }
+
+
+    /**
+     * Loads with a different fill byte are cached separately
+     */
+    @Test
+    public void test_settings() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(1, 0x100, (byte) 1),
+            TestFiles.record(1, 0x102, (byte) 2),
+            TestFiles.record(9, 0)));
+        SCache cache = new SCache(1024);
+
+        SReader zero = new SLoader(file).withCache(cache).load();
+        SReader ones = new SLoader(file).withCache(cache).withFillByte((byte) 0xff).load();
+
+        assertArrayEquals("Zero", new byte[] { 1, 0, 2 }, zero.getData());
+        assertArrayEquals("Ones", new byte[] { 1, (byte) 0xff, 2 }, ones.getData());
+        assertSame("Cached", ones, new SLoader(file).withCache(cache).withFillByte((byte) 0xff).load());
+        assertEquals("Size", 2, cache.size());
+    }
+
+
+    /**
+     * The least recently used files are evicted to keep the cache within its size, and a file that is larger than
+     * the cache is not cached
+     */
+    @Test
+    public void test_eviction() throws Exception {
+        File first = file(0, 40);
+        File second = file(0, 40);
+        File third = file(0, 40);
+        File large = file(0, 101);
+        SCache cache = new SCache(100);
+
+        SReader reader = cache.load(first);
+
+        cache.load(second);
+        cache.load(first);
+        cache.load(third);
+
+        assertEquals("Size", 2, cache.size());
+        assertEquals("Bytes", 80, cache.getBytes());
+        assertSame("Most recent", reader, cache.load(first));
+        assertEquals("Misses", 3, cache.getMisses());
+
+        cache.load(second);
+
+        assertEquals("Evicted", 4, cache.getMisses());
+
+        cache.load(large);
+
+        assertEquals("Not cached", 2, cache.size());
+        assertEquals("Bytes", 80, cache.getBytes());
+    }
+
+
+    /**
+     * Invalidating a file removes every copy of it; clearing the cache removes every file
+     */
+    @Test
+    public void test_invalidate() throws Exception {
+        File file = file(0, 8);
+        File other = file(0, 4);
+        SCache cache = new SCache(1024);
+
+        cache.load(file);
+        new SLoader(file).withCache(cache).withFillByte((byte) 1).load();
+        cache.load(other);
+        cache.invalidate(file);
+
+        assertEquals("Invalidated size", 1, cache.size());
+        assertEquals("Invalidated bytes", 4, cache.getBytes());
+
+        cache.clear();
+
+        assertEquals("Cleared size", 0, cache.size());
+        assertEquals("Cleared bytes", 0, cache.getBytes());
+    }
+
+
+    /**
+     * Invalidating a file does not remove a file whose name starts with the same path
+     */
+    @Test
+    public void test_invalidateSimilarName() throws Exception {
+        File file = write(folder.newFile("data"), 0, 8);
+        File similar = write(folder.newFile("data" + File.pathSeparator + "copy"), 0, 4);
+        SCache cache = new SCache(1024);
+
+        cache.load(file);
+        SReader kept = cache.load(similar);
+        cache.invalidate(file);
+
+        assertEquals("Size", 1, cache.size());
+        assertEquals("Bytes", 4, cache.getBytes());
+        assertSame("Kept", kept, cache.load(similar));
+    }
+
+
+    /**
+     * Files held through soft references are returned while they are reachable
+     */
+    @Test
+    public void test_softReferences() throws Exception {
+        File file = file(0, 8);
+        SCache cache = new SCache(1024).withSoftReferences();
+
+        SReader reader = cache.load(file);
+
+        assertSame("Reader", reader, cache.load(file));
+    }
+
+
+    /**
+     * A file that can not be loaded is reported and not cached
+     */
+    @Test
+    public void test_invalidFile() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(TestFiles.record(1, 0, (byte) 1)));
+        SCache cache = new SCache(1024);
+
+        try {
+            cache.load(file);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Size", 0, cache.size());
+        }
+    }
+
+
+    /**
+     * A missing file is reported
+     */
+    @Test(expected = SRecordException.class)
+    public void test_missingFile() {
+        new SCache(1024).load(new File(folder.getRoot(), "missing.s19"));
+    }
+
+
+    /**
+     * The size of the cache can not be negative
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negativeSize() {
+        new SCache(-1);
+    }
+
+
+    @Nonnull
+    private File file(int address, int length) throws IOException {
+        return write(folder.newFile(), address, length);
+    }
+
+
+    @Nonnull
+    private static File write(@Nonnull File file, int address, int length) throws IOException {
+        return TestFiles.write(file, "\n",
+            Arrays.asList(TestFiles.record(1, address, new byte[length]), TestFiles.record(9, 0)));
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.tymefly.srec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SImage}
+ */
+public class SImageTest {
+    private static final byte FILL = (byte) 0xff;
+    private static final long GIB = 1L << 30;
+
+
+    /**
+     * An empty image has no data and no addresses
+     */
+    @Test
+    public void test_empty() {
+        SImage image = new SImage(FILL);
+
+        assertTrue("Empty", image.isEmpty());
+        assertEquals("Size", 0, image.size());
+        assertEquals("Start", 0, image.getStartAddress());
+        assertEquals("End", 0, image.getEndAddress());
+        assertEquals("Segments", 0, image.getSegments().size());
+        assertEquals("Array", 0, image.toArray().length);
+        assertEquals("Fill", FILL, image.get(0x1234));
+    }
+
+
+    /**
+     * Adjacent writes are merged into a single segment, in any order
+     */
+    @Test
+    public void test_adjacent() {
+        SImage image = new SImage(FILL);
+
+        image.write(0x102, new byte[] { 3, 4 }, 0, 2);
+        image.write(0x100, new byte[] { 1, 2 }, 0, 2);
+        image.write(0x104, new byte[] { 9, 5, 9 }, 1, 1);
+
+        assertEquals("Segments", 1, image.getSegments().size());
+        assertEquals("Start", 0x100, image.getStartAddress());
+        assertEquals("End", 0x104, image.getEndAddress());
+        assertArrayEquals("Data", new byte[] { 1, 2, 3, 4, 5 }, image.getSegments().get(0).getData());
+    }
+
+
+    /**
+     * Gaps between writes are separate segments, and read as the fill byte
+     */
+    @Test
+    public void test_gap() {
+        SImage image = new SImage(FILL);
+
+        image.write(0x100, new byte[] { 1, 2 }, 0, 2);
+        image.write(0x200, new byte[] { 3 }, 0, 1);
+
+        List<SImage.Segment> segments = image.getSegments();
+
+        assertEquals("Segments", 2, segments.size());
+        assertEquals("First end", 0x101, segments.get(0).getEndAddress());
+        assertEquals("Second start", 0x200, segments.get(1).getStartAddress());
+        assertEquals("Size", 3, image.size());
+        assertFalse("Gap", image.contains(0x102));
+        assertNull("Gap segment", image.findSegment(0x1ff));
+        assertEquals("Gap value", FILL, image.get(0x150));
+        assertEquals("Value", 3, image.get(0x200));
+        assertEquals("Span", 0x101, image.toArray().length);
+        assertEquals("Array gap", FILL, image.toArray()[0x50]);
+    }
+
+
+    /**
+     * Later writes overwrite earlier data, and a write that bridges two segments merges them
+     */
+    @Test
+    public void test_overwrite() {
+        SImage image = new SImage((byte) 0);
+
+        image.write(0x100, new byte[] { 1, 1, 1, 1 }, 0, 4);
+        image.write(0x106, new byte[] { 2, 2 }, 0, 2);
+        image.write(0x102, new byte[] { 3, 3, 3, 3, 3 }, 0, 5);
+
+        assertEquals("Segments", 1, image.getSegments().size());
+        assertArrayEquals("Data", new byte[] { 1, 1, 3, 3, 3, 3, 3, 2 }, image.toArray());
+    }
+
+
+    /**
+     * Segments do not cross a 1 GiB boundary, so each one fits in an array
+     */
+    @Test
+    public void test_segmentBoundary() {
+        SImage image = new SImage(FILL);
+
+        image.write(GIB - 2, new byte[] { 1, 2, 3, 4 }, 0, 4);
+
+        List<SImage.Segment> segments = image.getSegments();
+
+        assertEquals("Segments", 2, segments.size());
+        assertEquals("First", GIB - 2, segments.get(0).getStartAddress());
+        assertEquals("First size", 2, segments.get(0).size());
+        assertEquals("Second", GIB, segments.get(1).getStartAddress());
+        assertArrayEquals("Data", new byte[] { 1, 2, 3, 4 }, image.toArray());
+    }
+
+
+    /**
+     * Addresses above 4 GiB are held sparsely
+     */
+    @Test
+    public void test_sparse() {
+        SImage image = new SImage(FILL);
+
+        image.write(0, new byte[] { 1 }, 0, 1);
+        image.write(0xffffffffL, new byte[] { 2 }, 0, 1);
+
+        assertEquals("Size", 2, image.size());
+        assertEquals("End", 0xffffffffL, image.getEndAddress());
+        assertEquals("Value", 2, image.get(0xffffffffL));
+    }
+
+
+    /**
+     * A segment can be viewed as a read-only buffer that shares the segment's bytes
+     */
+    @Test
+    public void test_asByteBuffer() {
+        SImage image = new SImage(FILL);
+
+        image.write(0x100, new byte[] { 1, 2, 3 }, 0, 3);
+
+        ByteBuffer view = image.getSegments().get(0).asByteBuffer();
+
+        assertTrue("Read only", view.isReadOnly());
+        assertEquals("Position", 0, view.position());
+        assertEquals("Limit", 3, view.limit());
+        assertEquals("Capacity", 3, view.capacity());
+        assertEquals("Value", 2, view.get(1));
+
+        image.write(0x101, new byte[] { 9 }, 0, 1);
+
+        assertEquals("Shared", 9, view.get(1));
+    }
+
+
+    /**
+     * Part of an image, including gaps and addresses outside the image, can be read into an existing array
+     */
+    @Test
+    public void test_read() {
+        SImage image = new SImage(FILL);
+        byte[] dest = new byte[8];
+
+        image.write(0x100, new byte[] { 1, 2 }, 0, 2);
+        image.write(0x104, new byte[] { 3 }, 0, 1);
+        image.read(0xfe, dest, 1, 7);
+
+        assertArrayEquals("Data", new byte[] { 0, FILL, FILL, 1, 2, FILL, FILL, 3 }, dest);
+        assertArrayEquals("Copy", new byte[] { 2, FILL, FILL }, image.toArray(0x101, 3));
+    }
+
+
+    /**
+     * Ranges that are not within the destination array are rejected
+     */
+    @Test
+    public void test_readRange() {
+        SImage image = new SImage(FILL);
+        int[][] ranges = { { -1, 2 }, { 0, -1 }, { 3, 2 } };
+
+        for (int[] range : ranges) {
+            try {
+                image.read(0, new byte[4], range[0], range[1]);
+                fail("Expected an IndexOutOfBoundsException");
+            } catch (IndexOutOfBoundsException e) {
+                assertEquals("Message", "Invalid range " + range[0] + " + " + range[1], e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Transferring the image to a channel writes the same bytes as toArray(), including large gaps
+     */
+    @Test
+    public void test_transferTo() {
+        SImage image = new SImage(FILL);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        image.write(0x100, new byte[] { 1, 2 }, 0, 2);
+        image.write(0x30000, new byte[] { 3 }, 0, 1);
+
+        long written = image.transferTo(Channels.newChannel(output));
+
+        assertEquals("Written", 0x30000 - 0x100 + 1, written);
+        assertArrayEquals("Data", image.toArray(), output.toByteArray());
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SIndex}
+ */
+public class SIndexTest {
+    private static final int RECORDS = 20_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Reads from the index return the same bytes as a load, including addresses that are written more than once
+     */
+    @Test
+    public void test_read() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", TestFiles.dataFile(new Random(25), RECORDS));
+        SReader reader = new SLoader(file).load();
+        SIndex index = new SLoader(file).index();
+        Random random = new Random(26);
+
+        assertTrue("Blocks", index.getBlocks() > 1);
+
+        for (int i = 0; i < 100; i++) {
+            long address = reader.getFirstAddress() - 16 + random.nextInt((int) reader.getSpan() + 32);
+            byte[] expected = new byte[random.nextInt(300)];
+
+            reader.getImage().read(address, expected, 0, expected.length);
+
+            assertArrayEquals("Read " + expected.length + " bytes at 0x" + Long.toHexString(address),
+                expected, index.read(address, expected.length));
+        }
+    }
+
+
+    /**
+     * Addresses that are not covered by any data record are set to the fill byte of the loader
+     */
+    @Test
+    public void test_fillByte() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(2, 0x10000, (byte) 1, (byte) 2),
+            TestFiles.record(2, 0x800000, (byte) 3),
+            TestFiles.record(8, 0)));
+        SIndex index = new SLoader(file).withFillByte((byte) 0xee).index();
+
+        assertEquals("Blocks", 2, index.getBlocks());
+        assertArrayEquals("Data", new byte[] { (byte) 0xee, 1, 2, (byte) 0xee }, index.read(0xffff, 4));
+        assertArrayEquals("Far", new byte[] { 3 }, index.read(0x800000, 1));
+        assertArrayEquals("Empty", new byte[0], index.read(0x10000, 0));
+    }
+
+
+    /**
+     * A read fails once the file has changed
+     */
+    @Test
+    public void test_changed() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", line((byte) 1));
+        SIndex index = new SLoader(file).index();
+
+        TestFiles.write(file, "\n", line((byte) 1, (byte) 2));
+
+        try {
+            index.read(0x100, 1);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", "SRecord file " + file.getPath() + " has changed since it was indexed",
+                e.getMessage());
+        }
+    }
+
+
+    /**
+     * A saved index is reused while the file is unchanged, and replaced when the file changes or it is damaged
+     */
+    @Test
+    public void test_saved() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", TestFiles.dataFile(new Random(27), RECORDS));
+        File saved = new File(folder.getRoot(), "data.offsets");
+        SIndex index = new SLoader(file).index(saved);
+
+        assertNotNull("Saved", open(saved, file));
+        assertEquals("Reused", index.getBlocks(), new SLoader(file).index(saved).getBlocks());
+
+        byte[] content = Files.readAllBytes(saved.toPath());
+
+        content[content.length / 2] ^= 1;
+        Files.write(saved.toPath(), content);
+
+        assertNull("Damaged", open(saved, file));
+        assertEquals("Rebuilt", index.getBlocks(), new SLoader(file).index(saved).getBlocks());
+        assertNotNull("Replaced", open(saved, file));
+
+        TestFiles.write(file, "\n", line((byte) 4));
+
+        assertNull("Changed", open(saved, file));
+        assertArrayEquals("Reindexed", new byte[] { 4 }, new SLoader(file).index(saved).read(0x100, 1));
+        assertNotNull("Saved again", open(saved, file));
+    }
+
+
+    /**
+     * The length of a read can not be negative
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negativeLength() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", line((byte) 1));
+
+        new SLoader(file).index().read(0x100, -1);
+    }
+
+
+    /**
+     * An invalid file is reported when it is indexed
+     */
+    @Test(expected = SRecordException.class)
+    public void test_invalidFile() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n",
+            Arrays.asList(TestFiles.corrupt(TestFiles.record(1, 0x100, (byte) 1)), TestFiles.record(9, 0)));
+
+        new SLoader(file).index();
+    }
+
+
+    /**
+     * Intel HEX files can not be indexed
+     */
+    @Test
+    public void test_intelHex() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(TestFiles.intel(1, 0)));
+
+        try {
+            new SLoader(file).withIntelHex().index();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Message", "Intel HEX files can not be indexed", e.getMessage());
+        }
+
+        try {
+            new SLoader(file).withIntelHex().index(new File(folder.getRoot(), "hex.offsets"));
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Message", "Intel HEX files can not be indexed", e.getMessage());
+        }
+    }
+
+
+    @Nonnull
+    private static List<String> line(@Nonnull byte... data) {
+        return Arrays.asList(TestFiles.record(1, 0x100, data), TestFiles.record(9, 0));
+    }
+
+
+    @Nullable
+    private static SIndex open(@Nonnull File saved, @Nonnull File file) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+
+        return SIndex.open(saved, file.getPath(), attributes, (byte) 0, true);
+    }
+}
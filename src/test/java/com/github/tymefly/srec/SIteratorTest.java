@@ -0,0 +1,156 @@
+package com.github.tymefly.srec;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SIterator}
+ */
+public class SIteratorTest {
+    private static final List<String> LINES = Arrays.asList(
+        TestFiles.header("hello"),
+        TestFiles.record(1, 0x100, (byte) 1, (byte) 2, (byte) 3),
+        "",
+        TestFiles.record(1, 0x2000, (byte) 4),
+        TestFiles.record(9, 0x100));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Each record is returned with its type, address, data and line number
+     */
+    @Test
+    public void test_iterate() {
+        try (
+            SIterator iterator = SIterator.of(new StringReader(String.join("\n", LINES)))
+        ) {
+            assertLine(iterator.next(), SRecord.HEADER, 0, 1, "hello".getBytes(StandardCharsets.US_ASCII));
+            assertLine(iterator.next(), SRecord.DATA_16, 0x100, 2, new byte[] { 1, 2, 3 });
+            assertLine(iterator.next(), SRecord.DATA_16, 0x2000, 4, new byte[] { 4 });
+            assertLine(iterator.next(), SRecord.START_ADDRESS_16, 0x100, 5, new byte[0]);
+            assertFalse("End", iterator.hasNext());
+        }
+    }
+
+
+    /**
+     * Asking for a record after the last one throws
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void test_afterEnd() {
+        try (
+            SIterator iterator = SIterator.of(new ByteArrayInputStream(TestFiles.record(9, 0).getBytes()))
+        ) {
+            iterator.next();
+            iterator.next();
+        }
+    }
+
+
+    /**
+     * Records are only parsed as they are requested, so a short-circuited stream does not see later errors
+     */
+    @Test
+    public void test_lazy() {
+        String text = TestFiles.record(1, 0x100, (byte) 1) + "\nnot a record\n";
+
+        try (
+            Stream<SLine> stream = SIterator.of(new StringReader(text)).stream()
+        ) {
+            assertEquals("First", 0x100, stream.findFirst().get().getAddress());
+        }
+    }
+
+
+    /**
+     * A missing termination record is detected at the end of the source
+     */
+    @Test
+    public void test_missingTermination() {
+        try (
+            SIterator iterator = SIterator.of(new StringReader(TestFiles.record(1, 0x100, (byte) 1)))
+        ) {
+            assertTrue("First", iterator.hasNext());
+            iterator.next();
+            iterator.hasNext();
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", "Unexpected EOF", e.getMessage());
+        }
+    }
+
+
+    /**
+     * Closing the stream closes the source
+     */
+    @Test
+    public void test_close() {
+        boolean[] closed = { false };
+        StringReader reader = new StringReader(String.join("\n", LINES)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        try (
+            Stream<SLine> stream = SIterator.of(reader).stream()
+        ) {
+            assertEquals("Count", 4, stream.count());
+        }
+
+        assertTrue("Closed", closed[0]);
+    }
+
+
+    /**
+     * A loader streams the records in a file
+     */
+    @Test
+    public void test_loaderStream() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\r\n", LINES);
+
+        try (
+            Stream<SLine> stream = new SLoader(file).withMemoryMapping().stream()
+        ) {
+            List<Long> addresses = stream.filter(l -> l.getType() == SRecord.DATA_16)
+                .map(SLine::getAddress)
+                .collect(Collectors.toList());
+
+            assertEquals("Addresses", Arrays.asList(0x100L, 0x2000L), addresses);
+        }
+    }
+
+
+    private static void assertLine(@Nonnull SLine line, @Nonnull SRecord type, long address, int lineNumber,
+                                   @Nonnull byte[] data) {
+        assertEquals("Type", type, line.getType());
+        assertEquals("Address", address, line.getAddress());
+        assertEquals("Line", lineNumber, line.getLineNumber());
+        assertEquals("Length", data.length, line.getLength());
+        assertArrayEquals("Data", data, line.getData());
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SLoader}
+ */
+public class SLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Every record is passed to the visitor in file order
+     */
+    @Test
+    public void test_visit() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.header("first"),
+            TestFiles.record(1, 0x1234, (byte) 1, (byte) 2),
+            TestFiles.record(2, 0x123456, (byte) 3),
+            TestFiles.record(3, 0x12345678L, (byte) 4, (byte) 5, (byte) 6),
+            TestFiles.record(5, 3),
+            TestFiles.record(7, 0x12345678L)));
+        TestFiles.RecordingVisitor visitor = TestFiles.recorder();
+
+        new SLoader(file).visit(visitor);
+
+        assertEquals("Events",
+            Arrays.asList("header first",
+                          "data 1234 0102",
+                          "data 123456 03",
+                          "data 12345678 040506",
+                          "count 3",
+                          "start 12345678"),
+            visitor.getEvents());
+    }
+
+
+    /**
+     * A visitor that only implements some of the methods can be used
+     */
+    @Test
+    public void test_defaultMethods() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.header("first"),
+            TestFiles.record(1, 0x10, (byte) 1, (byte) 2),
+            TestFiles.record(9, 0)));
+        long[] total = { 0 };
+
+        new SLoader(file).visit(new SVisitor() {
+            @Override
+            public void onData(long address, byte[] buffer, int offset, int length) {
+                total[0] += length;
+            }
+        });
+
+        assertEquals("Total", 2, total[0]);
+    }
+
+
+    /**
+     * Records before an error are passed to the visitor, followed by the error that is thrown
+     */
+    @Test
+    public void test_visitError() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(1, 0x10, (byte) 1),
+            TestFiles.corrupt(TestFiles.record(1, 0x11, (byte) 2)),
+            TestFiles.record(9, 0)));
+        TestFiles.RecordingVisitor visitor = TestFiles.recorder();
+        SRecordException[] reported = { null };
+
+        try {
+            new SLoader(file).visit(new SVisitor() {
+                @Override
+                public void onData(long address, byte[] buffer, int offset, int length) {
+                    visitor.onData(address, buffer, offset, length);
+                }
+
+                @Override
+                public void onError(SRecordException error) {
+                    reported[0] = error;
+                }
+            });
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertSame("Reported", e, reported[0]);
+            assertEquals("Message", "Invalid record on line 2", e.getMessage());
+        }
+
+        assertEquals("Events", Collections.singletonList("data 10 01"), visitor.getEvents());
+    }
+
+
+    /**
+     * A file that can not be opened is reported to the visitor
+     */
+    @Test
+    public void test_missingFile() {
+        TestFiles.RecordingVisitor visitor = TestFiles.recorder();
+        File missing = new File(folder.getRoot(), "missing.s19");
+
+        try {
+            new SLoader(missing).visit(visitor);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Events", Collections.singletonList("error " + e.getMessage()), visitor.getEvents());
+        }
+    }
+
+
+    /**
+     * A file is converted to a binary image that starts at the lowest address, with gaps set to zero
+     */
+    @Test
+    public void test_toBinary() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(2, 0x10008, (byte) 3),
+            TestFiles.record(2, 0x10000, (byte) 1, (byte) 2),
+            TestFiles.record(8, 0)));
+        File binary = folder.newFile();
+
+        long size = new SLoader(file).toBinary(binary);
+
+        assertEquals("Size", 9, size);
+        assertArrayEquals("Data", new byte[] { 1, 2, 0, 0, 0, 0, 0, 0, 3 }, Files.readAllBytes(binary.toPath()));
+    }
+
+
+    /**
+     * Gaps are filled with a fill byte that is not zero, and the image starts at the base address
+     */
+    @Test
+    public void test_toBinaryFill() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(1, 0x102, (byte) 1, (byte) 2),
+            TestFiles.record(1, 0x105, (byte) 3),
+            TestFiles.record(9, 0)));
+        File binary = folder.newFile();
+
+        long size = new SLoader(file).withFillByte((byte) 0xff).toBinary(binary, 0x100);
+
+        assertEquals("Size", 6, size);
+        assertArrayEquals("Data", new byte[] { -1, -1, 1, 2, -1, 3 }, Files.readAllBytes(binary.toPath()));
+    }
+
+
+    /**
+     * A large file converted in parallel gives the same image as the SReader
+     */
+    @Test
+    public void test_toBinaryParallel() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", TestFiles.dataFile(new Random(3), 100_000));
+        File binary = folder.newFile();
+
+        new SLoader(file).withParallelism().toBinary(binary);
+
+        assertArrayEquals("Data", SReader.load(file).getData(), Files.readAllBytes(binary.toPath()));
+    }
+
+
+    /**
+     * Data below the base address is rejected
+     */
+    @Test
+    public void test_toBinaryBelowBase() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(1, 0x100, (byte) 1),
+            TestFiles.record(9, 0)));
+
+        try {
+            new SLoader(file).toBinary(folder.newFile(), 0x101);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", "Data at address 0x100 is below the base address 0x101", e.getMessage());
+        }
+    }
+}
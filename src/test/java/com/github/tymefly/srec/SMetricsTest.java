@@ -0,0 +1,217 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SMetrics}
+ */
+public class SMetricsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * A load counts every line, byte and record of the file, and the range of addresses that the data covers
+     */
+    @Test
+    public void test_load() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.header("metrics"),
+            TestFiles.record(1, 0x1000, new byte[20]),
+            TestFiles.record(1, 0x0800, new byte[3]),
+            "",
+            TestFiles.record(1, 0x2000, new byte[1]),
+            TestFiles.record(5, 3),
+            TestFiles.record(9, 0x0800)));
+        List<SMetrics> loads = new ArrayList<>();
+
+        new SLoader(file).withMetrics(listener(loads)).load();
+
+        assertEquals("Loads", 1, loads.size());
+
+        SMetrics metrics = loads.get(0);
+
+        assertEquals("Bytes", file.length(), metrics.getBytes());
+        assertEquals("Lines", 7, metrics.getLines());
+        assertEquals("Headers", 1, metrics.getRecords(SRecord.HEADER));
+        assertEquals("Data", 3, metrics.getRecords(SRecord.DATA_16));
+        assertEquals("Count", 1, metrics.getRecords(SRecord.COUNT_16));
+        assertEquals("Start", 1, metrics.getRecords(SRecord.START_ADDRESS_16));
+        assertEquals("Records", 6, metrics.getRecords());
+        assertEquals("Lowest", 0x0800, metrics.getLowestAddress());
+        assertEquals("Highest", 0x2000, metrics.getHighestAddress());
+        assertTrue("Verified", metrics.isChecksumVerified());
+        assertTrue("Elapsed", metrics.getElapsedNanos() >= metrics.getIoNanos() + metrics.getVisitorNanos());
+        assertEquals("Codec", metrics.getElapsedNanos() - metrics.getIoNanos() - metrics.getVisitorNanos(),
+            metrics.getCodecNanos());
+    }
+
+
+    /**
+     * Every data byte, and every byte of the header, is attributed to exactly one hex codec
+     */
+    @Test
+    public void test_codecBytes() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.header("abc"),
+            TestFiles.record(2, 0x10000, new byte[19]),
+            TestFiles.record(2, 0x20000, new byte[2]),
+            TestFiles.record(8, 0)));
+        List<SMetrics> loads = new ArrayList<>();
+
+        new SLoader(file).withMetrics(listener(loads)).load();
+
+        SMetrics metrics = loads.get(0);
+
+        assertEquals("Coded", 3 + 19 + 2,
+            metrics.getVectorBytes() + metrics.getWordBytes() + metrics.getTableBytes());
+        assertEquals("Word", Hex.wordBytes(3) + Hex.wordBytes(19) + Hex.wordBytes(2), metrics.getWordBytes());
+    }
+
+
+    /**
+     * Metrics report whether checksums were verified
+     */
+    @Test
+    public void test_withoutChecksumVerification() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", TestFiles.dataFile(new Random(21), 10));
+        List<SMetrics> loads = new ArrayList<>();
+
+        new SLoader(file).withoutChecksumVerification().withMetrics(listener(loads)).load();
+
+        assertFalse("Verified", loads.get(0).isChecksumVerified());
+    }
+
+
+    /**
+     * Memory mapped and parallel loads count the same records, lines and bytes as a sequential load
+     */
+    @Test
+    public void test_mappedAndParallel() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\r\n", TestFiles.dataFile(new Random(22), 100_000));
+        List<SMetrics> loads = new ArrayList<>();
+        SMetricsListener listener = listener(loads);
+
+        new SLoader(file).withMetrics(listener).visit(TestFiles.recorder());
+        new SLoader(file).withMemoryMapping().withMetrics(listener).visit(TestFiles.recorder());
+        new SLoader(file).withParallelism().withMetrics(listener).visit(TestFiles.recorder());
+
+        SMetrics expected = loads.get(0);
+
+        assertEquals("Loads", 3, loads.size());
+        assertEquals("Bytes", file.length(), expected.getBytes());
+        assertEquals("Data", 100_000, expected.getRecords(SRecord.DATA_32));
+
+        for (SMetrics actual : loads.subList(1, loads.size())) {
+            assertEquals("Bytes", expected.getBytes(), actual.getBytes());
+            assertEquals("Lines", expected.getLines(), actual.getLines());
+            assertEquals("Records", expected.getRecords(), actual.getRecords());
+            assertEquals("Data", expected.getRecords(SRecord.DATA_32), actual.getRecords(SRecord.DATA_32));
+            assertEquals("Lowest", expected.getLowestAddress(), actual.getLowestAddress());
+            assertEquals("Highest", expected.getHighestAddress(), actual.getHighestAddress());
+            assertEquals("Table", expected.getTableBytes(), actual.getTableBytes());
+        }
+    }
+
+
+    /**
+     * A file without data has no address range
+     */
+    @Test
+    public void test_noData() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n",
+            Arrays.asList(TestFiles.header("empty"), TestFiles.record(9, 0)));
+        List<SMetrics> loads = new ArrayList<>();
+
+        new SLoader(file).withMetrics(listener(loads)).visit(TestFiles.recorder());
+
+        assertEquals("Lowest", -1, loads.get(0).getLowestAddress());
+        assertEquals("Highest", -1, loads.get(0).getHighestAddress());
+    }
+
+
+    /**
+     * The listener is not called if the load fails
+     */
+    @Test
+    public void test_failedLoad() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n",
+            Arrays.asList(TestFiles.corrupt(TestFiles.record(1, 0, (byte) 1)), TestFiles.record(9, 0)));
+        List<SMetrics> loads = new ArrayList<>();
+
+        try {
+            new SLoader(file).withMetrics(listener(loads)).load();
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Loads", 0, loads.size());
+        }
+    }
+
+
+    /**
+     * A write counts every record and byte that was written to the file, and the range of addresses that the data
+     * covers
+     */
+    @Test
+    public void test_write() throws Exception {
+        File file = folder.newFile();
+        List<SMetrics> writes = new ArrayList<>();
+
+        try (
+            SWriter writer = new SWriter(file)
+        ) {
+            writer.setMetricsListener(new SMetricsListener() {
+                @Override
+                public void onWrite(@Nonnull String destination, @Nonnull SMetrics metrics) {
+                    writes.add(metrics);
+                }
+            });
+            writer.setRecordSize(16);
+            writer.withHeader("metrics");
+            writer.withData(0x1000, new byte[40], 0, 40);
+            writer.withData(0x0100, new byte[1], 0, 1);
+        }
+
+        assertEquals("Writes", 1, writes.size());
+
+        SMetrics metrics = writes.get(0);
+
+        assertEquals("Bytes", file.length(), metrics.getBytes());
+        assertEquals("Headers", 1, metrics.getRecords(SRecord.HEADER));
+        assertEquals("Data", 4, metrics.getRecords(SRecord.DATA_16));
+        assertEquals("Start", 1, metrics.getRecords(SRecord.START_ADDRESS_16));
+        assertEquals("Lines", metrics.getRecords(), metrics.getLines());
+        assertEquals("Lowest", 0x0100, metrics.getLowestAddress());
+        assertEquals("Highest", 0x1027, metrics.getHighestAddress());
+        assertFalse("Verified", metrics.isChecksumVerified());
+        assertEquals("Word", 0, metrics.getWordBytes());
+        assertEquals("Visitor", 0, metrics.getVisitorNanos());
+    }
+
+
+    @Nonnull
+    private static SMetricsListener listener(@Nonnull List<SMetrics> loads) {
+        return new SMetricsListener() {
+            @Override
+            public void onLoad(@Nonnull String source, @Nonnull SMetrics metrics) {
+                loads.add(metrics);
+            }
+        };
+    }
+}
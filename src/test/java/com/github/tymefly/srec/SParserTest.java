@@ -0,0 +1,195 @@
+package com.github.tymefly.srec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SParser}
+ */
+public class SParserTest {
+    private static final byte[] DATA = { 0x00, 0x01, 0x7f, (byte) 0x80, (byte) 0xfe, (byte) 0xff, 0x12, 0x34, 0x56 };
+
+
+    /**
+     * Records with valid checksums are decoded
+     */
+    @Test
+    public void test_validChecksum() throws Exception {
+        SParser parser = parser(TestFiles.record(1, 0x1234, DATA), TestFiles.record(9, 0));
+
+        assertTrue("First", parser.next());
+        assertEquals("Type", SRecord.DATA_16, parser.getType());
+        assertEquals("Address", 0x1234, parser.getAddress());
+        assertArrayEquals("Data", DATA, Arrays.copyOf(parser.getData(), parser.getDataLength()));
+        assertTrue("Second", parser.next());
+        assertFalse("End", parser.next());
+    }
+
+
+    /**
+     * Lower case digits are accepted, and the checksum is calculated from their values
+     */
+    @Test
+    public void test_lowerCase() throws Exception {
+        SParser parser = parser(TestFiles.record(1, 0xabcd, DATA).toLowerCase().replace('s', 'S'), "S9030000FC");
+
+        assertTrue("First", parser.next());
+        assertEquals("Address", 0xabcd, parser.getAddress());
+        assertArrayEquals("Data", DATA, Arrays.copyOf(parser.getData(), parser.getDataLength()));
+    }
+
+
+    /**
+     * A change to any digit of the count, address, data or checksum is detected
+     */
+    @Test
+    public void test_everyDigitIsChecked() throws Exception {
+        String valid = TestFiles.record(1, 0x1234, DATA);
+
+        for (int i = 2; i < valid.length(); i++) {
+            char digit = valid.charAt(i);
+            char changed = (digit == '0' ? '1' : '0');
+            String line = valid.substring(0, i) + changed + valid.substring(i + 1);
+            String error = errorOf(true, line, TestFiles.record(9, 0));
+
+            assertTrue("Digit " + i + ": " + error,
+                error.equals("Invalid record on line 1") || error.equals("Record on line 1 has been truncated"));
+        }
+    }
+
+
+    /**
+     * Checksums are not verified if verification is disabled
+     */
+    @Test
+    public void test_withoutVerification() throws Exception {
+        SParser parser = parser(TestFiles.corrupt(TestFiles.record(1, 0x100, DATA)), TestFiles.record(9, 0))
+            .withChecksums(false);
+
+        assertTrue("First", parser.next());
+        assertArrayEquals("Data", DATA, Arrays.copyOf(parser.getData(), parser.getDataLength()));
+        assertTrue("Second", parser.next());
+        assertFalse("End", parser.next());
+    }
+
+
+    /**
+     * Invalid hex digits in the data are still detected when checksums are not verified
+     */
+    @Test
+    public void test_invalidDigitWithoutVerification() {
+        String valid = TestFiles.record(1, 0x100, DATA);
+        String line = valid.substring(0, 10) + 'G' + valid.substring(11);
+
+        assertEquals("Error", "Invalid record on line 1", errorOf(false, line, TestFiles.record(9, 0)));
+    }
+
+
+    /**
+     * An invalid checksum is reported on the line that it is on
+     */
+    @Test
+    public void test_checksumLine() {
+        String error = errorOf(true,
+            TestFiles.header("h"),
+            "",
+            TestFiles.record(1, 0, DATA),
+            TestFiles.corrupt(TestFiles.record(1, 0x10, DATA)),
+            TestFiles.record(9, 0));
+
+        assertEquals("Error", "Invalid record on line 4", error);
+    }
+
+
+    /**
+     * Lines can end with LF, CR LF or CR, and the last line does not need a separator
+     */
+    @Test
+    public void test_lineSeparators() throws Exception {
+        for (String separator : Arrays.asList("\n", "\r\n", "\r")) {
+            String text = TestFiles.header("h") + separator + separator +
+                TestFiles.record(1, 0x100, DATA) + separator +
+                TestFiles.record(9, 0);
+            SParser parser = parse(text);
+            String name = separator.replace("\r", "CR").replace("\n", "LF");
+
+            assertTrue(name + " header", parser.next());
+            assertEquals(name + " header type", SRecord.HEADER, parser.getType());
+            assertTrue(name + " data", parser.next());
+            assertEquals(name + " data line", 3, parser.getLineNumber());
+            assertArrayEquals(name + " data", DATA, Arrays.copyOf(parser.getData(), parser.getDataLength()));
+            assertTrue(name + " termination", parser.next());
+            assertEquals(name + " termination type", SRecord.START_ADDRESS_16, parser.getType());
+            assertFalse(name + " end", parser.next());
+        }
+    }
+
+
+    /**
+     * Malformed lines are reported as S-Record errors on the line that they are on, rather than leaking
+     * exceptions from decoding the hex digits
+     */
+    @Test
+    public void test_malformed() {
+        String end = TestFiles.record(9, 0);
+
+        assertEquals("Short", "Record on line 1 has been truncated", errorOf(true, "S1", end));
+        assertEquals("Missing data", "Record on line 2 has been truncated", errorOf(true, "", "S1050000", end));
+        assertEquals("Too long", "Invalid record on line 1", errorOf(true, "S1030000FC00", end));
+        assertEquals("Not an S", "Invalid record on line 1", errorOf(true, "X1030000FC", end));
+        assertEquals("Bad type", "Invalid record on line 1", errorOf(true, "SX030000FC", end));
+        assertEquals("Bad count", "Invalid record on line 1", errorOf(true, "S1G30000FC", end));
+        assertEquals("Small count", "Invalid record on line 1", errorOf(true, "S1010000FC", end));
+        assertEquals("Reserved", "S4 records are reserved. See line 1", errorOf(true, "S4030000FC", end));
+        assertEquals("After end", "Invalid record on line 2", errorOf(true, end, TestFiles.record(1, 0, DATA)));
+        assertEquals("No end", "Unexpected EOF", errorOf(true, TestFiles.record(1, 0, DATA)));
+    }
+
+
+    @Nonnull
+    private static SParser parser(@Nonnull String... lines) {
+        return parse(String.join("\n", lines) + "\n");
+    }
+
+
+    @Nonnull
+    private static SParser parse(@Nonnull String text) {
+        return SParser.forChannel(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+
+    @Nonnull
+    private static String errorOf(boolean verify, @Nonnull String... lines) {
+        String message = null;
+
+        try {
+            SParser parser = parser(lines).withChecksums(verify);
+
+            while (parser.next()) {
+                parser.getType();
+            }
+
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            message = e.getMessage();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        return message;
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Unit tests for {@link SReader}
+ */
+public class SReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * S1 data and an S9 terminator are read with 16 bit addresses
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void test_16bit() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.header("16 bit"),
+            TestFiles.record(1, 0xfffe, (byte) 1, (byte) 2),
+            TestFiles.record(1, 0xfff0, (byte) 3),
+            TestFiles.record(9, 0xfff0)));
+
+        SReader reader = SReader.load(file);
+
+        assertEquals("Headers", Collections.singletonList("16 bit"), reader.getHeaders());
+        assertEquals("First", 0xfff0, reader.getFirstAddress());
+        assertEquals("Last", 0xffff, reader.getLastAddress());
+        assertEquals("Start", (short) 0xfff0, reader.getStartAddress());
+        assertEquals("End", (short) 0xffff, reader.getEndAddress());
+        assertEquals("Size", 16, reader.size());
+        assertEquals("Data", 3, reader.getData()[0]);
+        assertEquals("Gap", 0, reader.getData()[1]);
+    }
+
+
+    /**
+     * S2 data and an S8 terminator are read with 24 bit addresses
+     */
+    @Test
+    public void test_24bit() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\r\n", Arrays.asList(
+            TestFiles.record(2, 0x123456, (byte) 1, (byte) 2),
+            TestFiles.record(2, 0x123458, (byte) 3),
+            TestFiles.record(5, 2),
+            TestFiles.record(8, 0x123456)));
+
+        SReader reader = SReader.load(file);
+
+        assertEquals("First", 0x123456, reader.getFirstAddress());
+        assertEquals("Last", 0x123458, reader.getLastAddress());
+        assertArrayEquals("Data", new byte[] { 1, 2, 3 }, reader.getData());
+    }
+
+
+    /**
+     * S3 data and an S7 terminator are read with 32 bit addresses, including addresses with the top bit set
+     */
+    @Test
+    public void test_32bit() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(3, 0xfffffffcL, (byte) 1, (byte) 2, (byte) 3, (byte) 4),
+            TestFiles.record(3, 0xfffffff8L, (byte) 5),
+            TestFiles.record(7, 0xfffffff8L)));
+
+        SReader reader = SReader.load(file);
+
+        assertEquals("First", 0xfffffff8L, reader.getFirstAddress());
+        assertEquals("Last", 0xffffffffL, reader.getLastAddress());
+        assertArrayEquals("Data", new byte[] { 5, 0, 0, 0, 1, 2, 3, 4 }, reader.getData());
+    }
+
+
+    /**
+     * Data that spans more than an array can hold is still available through the image
+     */
+    @Test
+    public void test_widelySeparated() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(3, 0x10, (byte) 1),
+            TestFiles.record(3, 0xf0000000L, (byte) 2),
+            TestFiles.record(7, 0)));
+
+        SReader reader = SReader.load(file);
+
+        try {
+            reader.size();
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Image size", 2, reader.getImage().size());
+            assertEquals("Image value", 2, reader.getImage().get(0xf0000000L));
+        }
+    }
+
+
+    /**
+     * An S6 count record holds a 24 bit count
+     */
+    @Test
+    public void test_24bitCount() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(1, 0x10, (byte) 1),
+            TestFiles.record(6, 0x010000),
+            TestFiles.record(9, 0)));
+
+        try {
+            SReader.load(file);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", "Unexpected count. Got 0x01, expected 0x10000", e.getMessage());
+        }
+    }
+
+
+    /**
+     * A file that can not be read is reported as an SRecordException
+     */
+    @Test
+    public void test_missingFile() {
+        File file = new File(folder.getRoot(), "missing.s19");
+
+        try {
+            SReader.load(file);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", "Failed to read SRecord file " + file.getPath(), e.getMessage());
+        }
+    }
+
+
+    /**
+     * A memory mapped load gives the same result as a buffered load, whatever the line separator
+     */
+    @Test
+    public void test_loadMapped() throws Exception {
+        for (String separator : Arrays.asList("\n", "\r\n", "\r")) {
+            File file = TestFiles.write(folder.newFile(), separator, TestFiles.dataFile(new Random(2), 5_000));
+            SReader expected = SReader.load(file);
+            SReader mapped = SReader.loadMapped(file);
+            SReader named = SReader.loadMapped(file.getPath());
+
+            assertEquals("Headers", expected.getHeaders(), mapped.getHeaders());
+            assertEquals("First", expected.getFirstAddress(), mapped.getFirstAddress());
+            assertEquals("Last", expected.getLastAddress(), mapped.getLastAddress());
+            assertArrayEquals("Data", expected.getData(), mapped.getData());
+            assertArrayEquals("Named", expected.getData(), named.getData());
+        }
+    }
+
+
+    /**
+     * A memory mapped load reports errors on the same line as a buffered load
+     */
+    @Test
+    public void test_loadMappedErrors() throws Exception {
+        File corrupt = TestFiles.write(folder.newFile(), "\r\n", Arrays.asList(
+            TestFiles.header("h"),
+            "",
+            TestFiles.record(1, 0, (byte) 1),
+            TestFiles.corrupt(TestFiles.record(1, 1, (byte) 2)),
+            TestFiles.record(9, 0)));
+        File unterminated = TestFiles.write(folder.newFile(), "\n",
+            Collections.singletonList(TestFiles.record(1, 0, (byte) 1)));
+        File empty = folder.newFile();
+        File missing = new File(folder.getRoot(), "missing.s19");
+
+        assertMappedError("Invalid record on line 4", corrupt);
+        assertMappedError("Unexpected EOF", unterminated);
+        assertMappedError("Unexpected EOF", empty);
+        assertMappedError("Failed to read SRecord file " + missing.getPath(), missing);
+    }
+
+
+    private static void assertMappedError(@Nonnull String expected, @Nonnull File file) {
+        try {
+            SReader.loadMapped(file);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", expected, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,636 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Unit tests for {@link SWriter}
+ */
+public class SWriterTest {
+    private static final byte[] DATA = { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+    private static final int PARALLEL_SIZE = 512 * 1024;
+    private static final File DESCRIPTORS = new File("/proc/self/fd");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * Closing a streaming writer a second time has no effect
+     */
+    @Test
+    public void test_closeStreamingTwice() throws Exception {
+        File file = folder.newFile();
+        int[] reports = { 0 };
+        SWriter writer = SWriter.streaming(file);
+
+        writer.setMetricsListener(new SMetricsListener() {
+            @Override
+            public void onWrite(@Nonnull String destination, @Nonnull SMetrics metrics) {
+                reports[0]++;
+            }
+        });
+        writer.withData(0x100, DATA, 0, DATA.length);
+        writer.close();
+
+        byte[] expected = Files.readAllBytes(file.toPath());
+
+        writer.close();
+
+        assertArrayEquals("File", expected, Files.readAllBytes(file.toPath()));
+        assertEquals("Reports", 1, reports[0]);
+        assertArrayEquals("Data", DATA, SReader.load(file).getData());
+    }
+
+
+    /**
+     * Closing a buffered writer a second time does not write the file again
+     */
+    @Test
+    public void test_closeBufferedTwice() throws Exception {
+        File file = folder.newFile();
+        SWriter writer = new SWriter(file);
+
+        writer.withData(0x100, DATA, 0, DATA.length);
+        writer.close();
+        Files.write(file.toPath(), Arrays.asList("unchanged"));
+        writer.close();
+
+        assertEquals("File", Arrays.asList("unchanged"), Files.readAllLines(file.toPath()));
+    }
+
+
+    /**
+     * A writer releases the file when it is closed, even if the last records could not be written
+     */
+    @Test
+    public void test_closeReleasesFile() throws Exception {
+        assumeTrue("Open files can not be listed", DESCRIPTORS.isDirectory());
+
+        File streamed = folder.newFile();
+        File failed = folder.newFile();
+        SWriter streaming = SWriter.streaming(streamed);
+        SWriter buffered = new SWriter(failed);
+
+        streaming.withData(0x100, DATA, 0, DATA.length);
+
+        assertTrue("Streaming open", isOpen(streamed));
+
+        streaming.close();
+
+        assertFalse("Streaming closed", isOpen(streamed));
+
+        buffered.setExecutor(r -> {
+            throw new IllegalStateException("Executor has been shut down");
+        });
+        buffered.withData(0x100, DATA, 0, DATA.length);
+
+        try {
+            buffered.close();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Message", "Executor has been shut down", e.getMessage());
+        }
+
+        assertFalse("Buffered closed", isOpen(failed));
+    }
+
+
+    /**
+     * A header of the maximum length is written in a single record
+     */
+    @Test
+    public void test_longestHeader() throws Exception {
+        File file = folder.newFile();
+        String header = String.join("", Collections.nCopies(SWriter.MAX_RECORD_SIZE, "h"));
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.withHeader(header);
+        }
+
+        assertEquals("Header", Collections.singletonList(header), SReader.load(file).getHeaders());
+    }
+
+
+    /**
+     * Headers that do not fit in a single record are rejected by both buffered and streaming writers
+     */
+    @Test
+    public void test_headerTooLong() throws Exception {
+        String header = String.join("", Collections.nCopies(SWriter.MAX_RECORD_SIZE + 1, "h"));
+
+        for (SWriter writer : Arrays.asList(new SWriter(folder.newFile()), SWriter.streaming(folder.newFile()))) {
+            try {
+                writer.withHeader(header);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Message", "Header of 253 characters is too long", e.getMessage());
+            }
+
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Data that ends at the last 16 bit address is split into records without wrapping
+     */
+    @Test
+    public void test_lastAddress() throws Exception {
+        File file = folder.newFile();
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.setRecordSize(16);
+            writer.withData(0xffc0, ByteBuffer.wrap(new byte[64]));
+        }
+
+        SReader reader = SReader.load(file);
+
+        assertEquals("First", 0xffc0, reader.getFirstAddress());
+        assertEquals("Last", 0xffff, reader.getLastAddress());
+    }
+
+
+    /**
+     * Data that would wrap past the end of the address range is rejected
+     */
+    @Test
+    public void test_addressWrap() throws Exception {
+        SWriter writer = SWriter.streaming(folder.newFile());
+
+        writer.setRecordSize(16);
+
+        try {
+            writer.withData(0xfff0, new byte[64], 0, 64);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Message", "0x40 bytes at 0xfff0 extends past the end of the address range", e.getMessage());
+        }
+
+        writer.setAddressSize(32);
+
+        try {
+            writer.withData(0xfffffff0, ByteBuffer.wrap(new byte[17]));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Message", "0x11 bytes at 0xfffffff0 extends past the end of the address range",
+                e.getMessage());
+        }
+
+        writer.close();
+    }
+
+
+    /**
+     * The address size can not be reduced below data that has already been added
+     */
+    @Test
+    public void test_reduceAddressSize() throws Exception {
+        File file = folder.newFile();
+
+        try (
+            SWriter writer = new SWriter(file)
+        ) {
+            writer.setAddressSize(24);
+            writer.withData(0xfff0, DATA, 0, DATA.length);
+            writer.setAddressSize(16);
+            writer.withData(0xfffc, DATA, 0, 4);
+
+            try {
+                writer.setAddressSize(24);
+                writer.withData(0x10000, DATA, 0, 1);
+                writer.setAddressSize(16);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Message", "Data has already been added above the 16 bit address range", e.getMessage());
+            }
+        }
+
+        assertEquals("Last", 0x10000, SReader.load(file).getLastAddress());
+    }
+
+
+    /**
+     * A start address must fit in the address size, whichever of them is set first
+     */
+    @Test
+    public void test_startAddressRange() throws Exception {
+        File file = folder.newFile();
+
+        try (
+            SWriter writer = new SWriter(file)
+        ) {
+            try {
+                writer.setStartAddress(0x12345);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Set", "Start address 0x12345 is past the end of the address range", e.getMessage());
+            }
+
+            writer.setAddressSize(24);
+            writer.setStartAddress(0x12345);
+
+            try {
+                writer.setAddressSize(16);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Reduced", "The start address is above the 16 bit address range", e.getMessage());
+            }
+        }
+
+        assertEquals("Start", Arrays.asList(TestFiles.record(8, 0x12345)), Files.readAllLines(file.toPath()));
+    }
+
+
+    /**
+     * A binary file that would extend past the end of the address range is rejected before any of it is added
+     */
+    @Test
+    public void test_binaryWrap() throws Exception {
+        File binary = folder.newFile();
+        File file = folder.newFile();
+
+        Files.write(binary.toPath(), new byte[32]);
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.withBinary(0xffe0, binary);
+
+            try {
+                writer.withBinary(0xfff0, binary);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Message", "0x20 bytes at 0xfff0 extends past the end of the address range",
+                    e.getMessage());
+            }
+        }
+
+        assertEquals("Size", 32, SReader.load(file).size());
+    }
+
+
+    /**
+     * Records encoded in parallel batches are identical to records encoded sequentially, and the metrics record
+     * the addresses of the data up to the last address
+     */
+    @Test
+    public void test_parallel() throws Exception {
+        File sequential = folder.newFile();
+        File parallel = folder.newFile();
+        byte[] data = new byte[PARALLEL_SIZE];
+        SMetrics[] reported = { null };
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        new Random(7).nextBytes(data);
+
+        try (
+            SWriter writer = SWriter.streaming(sequential)
+        ) {
+            writer.setAddressSize(24);
+            writer.withData(0x1000000 - PARALLEL_SIZE, data, 0, data.length);
+        }
+
+        try (
+            SWriter writer = SWriter.streaming(parallel)
+        ) {
+            writer.setAddressSize(24);
+            writer.setExecutor(pool);
+            writer.setMetricsListener(new SMetricsListener() {
+                @Override
+                public void onWrite(@Nonnull String destination, @Nonnull SMetrics metrics) {
+                    reported[0] = metrics;
+                }
+            });
+            writer.withData(0x1000000 - PARALLEL_SIZE, data, 0, data.length);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals("File", Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+        assertEquals("Lowest", 0x1000000 - PARALLEL_SIZE, reported[0].getLowestAddress());
+        assertEquals("Highest", 0xffffff, reported[0].getHighestAddress());
+    }
+
+
+    /**
+     * Data that would wrap past the end of the address range is rejected before it is split into batches
+     */
+    @Test
+    public void test_parallelWrap() throws Exception {
+        File file = folder.newFile();
+        SMetrics[] reported = { null };
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.setAddressSize(24);
+            writer.setExecutor(pool);
+            writer.setMetricsListener(new SMetricsListener() {
+                @Override
+                public void onWrite(@Nonnull String destination, @Nonnull SMetrics metrics) {
+                    reported[0] = metrics;
+                }
+            });
+
+            try {
+                writer.withData(0x1000000 - PARALLEL_SIZE + 1, ByteBuffer.allocate(PARALLEL_SIZE));
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Message", "0x80000 bytes at 0xf80001 extends past the end of the address range",
+                    e.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals("Records", 0, reported[0].getRecords(SRecord.DATA_24));
+        assertEquals("Data", 0, SReader.load(file).getImage().size());
+    }
+
+
+    /**
+     * Data that would need more records than a count record can hold is rejected before any of it is written
+     */
+    @Test
+    public void test_countLimit() throws Exception {
+        ByteBuffer tooMany = ByteBuffer.allocate(0x1000000);
+        File streamed = folder.newFile();
+        File buffered = folder.newFile();
+
+        try (
+            SWriter writer = SWriter.streaming(streamed)
+        ) {
+            writer.setAddressSize(32);
+            writer.setRecordSize(1);
+            writer.setCountRecord(true);
+
+            try {
+                writer.withData(0, tooMany);
+                fail("Expected an SRecordException");
+            } catch (SRecordException e) {
+                assertEquals("Streaming", "16777216 data records is too many for a count record", e.getMessage());
+            }
+        }
+
+        assertEquals("Streamed", Arrays.asList(TestFiles.record(5, 0), TestFiles.record(7, 0)),
+            Files.readAllLines(streamed.toPath()));
+
+        SWriter writer = new SWriter(buffered);
+
+        writer.setAddressSize(32);
+        writer.setRecordSize(1);
+        writer.setCountRecord(true);
+        writer.withData(0, tooMany);
+
+        try {
+            writer.close();
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Buffered", "16777216 data records is too many for a count record", e.getMessage());
+        }
+
+        assertEquals("Written", 0, buffered.length());
+    }
+
+
+    /**
+     * A batch that could not be encoded is reported as an SRecordException with the cause of the failure
+     */
+    @Test
+    public void test_encodeFailure() {
+        CompletableFuture<ByteBuffer> batch = new CompletableFuture<>();
+        IllegalStateException cause = new IllegalStateException("Encoding failed");
+
+        batch.completeExceptionally(cause);
+
+        try {
+            SWriter.join(batch);
+            fail("Expected an SRecordException");
+        } catch (SRecordException e) {
+            assertEquals("Message", "Failed to encode records", e.getMessage());
+            assertSame("Cause", cause, e.getCause());
+        }
+    }
+
+
+    /**
+     * Heap, sliced heap, direct and read-only buffers are written the same way as an array, and the position and
+     * limit of the buffer are not changed
+     */
+    @Test
+    public void test_byteBuffers() throws Exception {
+        byte[] padded = new byte[DATA.length + 2];
+        ByteBuffer direct = ByteBuffer.allocateDirect(DATA.length);
+
+        System.arraycopy(DATA, 0, padded, 1, DATA.length);
+        direct.put(DATA).flip();
+
+        ByteBuffer sliced = ByteBuffer.wrap(padded, 1, DATA.length).slice();
+        byte[] expected = writeBuffer(ByteBuffer.wrap(DATA));
+
+        for (ByteBuffer buffer : Arrays.asList(sliced, direct, ByteBuffer.wrap(DATA).asReadOnlyBuffer())) {
+            assertArrayEquals("File", expected, writeBuffer(buffer));
+            assertEquals("Position", 0, buffer.position());
+            assertEquals("Limit", DATA.length, buffer.limit());
+        }
+    }
+
+
+    /**
+     * Only the bytes between the position and limit of a buffer are written. A buffered writer reads the buffer
+     * when it is closed
+     */
+    @Test
+    public void test_bufferRange() throws Exception {
+        File file = folder.newFile();
+        ByteBuffer buffer = ByteBuffer.wrap(DATA.clone());
+
+        buffer.position(2).limit(5);
+
+        try (
+            SWriter writer = new SWriter(file)
+        ) {
+            writer.withData(0x100, buffer);
+            buffer.put(2, (byte) 0x7f);
+        }
+
+        SReader reader = SReader.load(file);
+
+        assertEquals("First", 0x100, reader.getFirstAddress());
+        assertArrayEquals("Data", new byte[] { 0x7f, 4, 5 }, reader.getData());
+    }
+
+
+    /**
+     * A memory mapped buffer is written the same way as an array
+     */
+    @Test
+    public void test_mappedBuffer() throws Exception {
+        File binary = folder.newFile();
+
+        Files.write(binary.toPath(), DATA);
+
+        try (
+            FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)
+        ) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA.length);
+
+            assertArrayEquals("File", writeBuffer(ByteBuffer.wrap(DATA)), writeBuffer(mapped));
+        }
+    }
+
+
+    @Nonnull
+    private byte[] writeBuffer(@Nonnull ByteBuffer buffer) throws IOException {
+        File file = folder.newFile();
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.setRecordSize(4);
+            writer.withData(0x1234, buffer);
+        }
+
+        return Files.readAllBytes(file.toPath());
+    }
+
+
+    /**
+     * A region of a binary file is written with the selected address size, count and start address
+     */
+    @Test
+    public void test_binaryRegion() throws Exception {
+        File binary = folder.newFile();
+        File file = folder.newFile();
+        byte[] data = new byte[1000];
+
+        new Random(5).nextBytes(data);
+        Files.write(binary.toPath(), data);
+
+        try (
+            SWriter writer = SWriter.streaming(file)
+        ) {
+            writer.setAddressSize(32);
+            writer.setRecordSize(64);
+            writer.setCountRecord(true);
+            writer.setStartAddress(0x80000010);
+            writer.withBinary(0x80000000, binary, 100, 800);
+        }
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        SReader reader = SReader.load(file);
+
+        assertEquals("Lines", 13 + 2, lines.size());
+        assertEquals("Data", "S345", lines.get(0).substring(0, 4));
+        assertEquals("Count", TestFiles.record(5, 13), lines.get(13));
+        assertEquals("Start", TestFiles.record(7, 0x80000010L), lines.get(14));
+        assertEquals("First", 0x80000000L, reader.getFirstAddress());
+        assertArrayEquals("Content", Arrays.copyOfRange(data, 100, 900), reader.getData());
+    }
+
+
+    /**
+     * Regions that are not within the binary file are rejected
+     */
+    @Test
+    public void test_binaryInvalidRegion() throws Exception {
+        File binary = folder.newFile();
+
+        Files.write(binary.toPath(), DATA);
+
+        try (
+            SWriter writer = new SWriter(folder.newFile())
+        ) {
+            writer.withBinary(0, binary, 5, DATA.length - 4);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Message", "Invalid region 5 + 5 of " + binary, e.getMessage());
+        }
+    }
+
+
+    /**
+     * Each address size selects its own data and terminating records, and limits the record size
+     */
+    @Test
+    public void test_addressSizes() throws Exception {
+        int[][] sizes = { { 16, 1, 9, 252 }, { 24, 2, 8, 251 }, { 32, 3, 7, 250 } };
+
+        for (int[] size : sizes) {
+            File file = folder.newFile();
+
+            try (
+                SWriter writer = SWriter.streaming(file)
+            ) {
+                writer.setAddressSize(size[0]);
+                writer.setRecordSize(size[3]);
+                writer.withData(0x10, DATA, 0, 1);
+            }
+
+            List<String> lines = Files.readAllLines(file.toPath());
+
+            assertEquals("Data " + size[0], TestFiles.record(size[1], 0x10, DATA[0]), lines.get(0));
+            assertEquals("Start " + size[0], TestFiles.record(size[2], 0x10), lines.get(1));
+
+            try {
+                SWriter writer = new SWriter(file);
+
+                writer.setAddressSize(size[0]);
+                writer.setRecordSize(size[3] + 1);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Message", "Invalid record size " + (size[3] + 1), e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Returns {@code true} if this process has {@code file} open
+     * @param file          File to look for
+     * @return {@code true} if this process has {@code file} open
+     * @throws IOException if the path of the file could not be resolved
+     */
+    private static boolean isOpen(@Nonnull File file) throws IOException {
+        File target = file.getCanonicalFile();
+        File[] descriptors = DESCRIPTORS.listFiles();
+        boolean open = false;
+
+        for (File descriptor : (descriptors == null ? new File[0] : descriptors)) {
+            open |= target.equals(descriptor.getCanonicalFile());
+        }
+
+        return open;
+    }
+}
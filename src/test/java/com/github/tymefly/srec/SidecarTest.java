@@ -0,0 +1,224 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Unit tests for {@link Sidecar}
+ */
+public class SidecarTest {
+    private static final String SETTINGS = "srec,0,true";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    /**
+     * A load saves a sidecar next to the file, and the sidecar restores the same headers, segments and addresses
+     */
+    @Test
+    public void test_roundTrip() throws Exception {
+        File file = TestFiles.write(folder.newFile("data.s28"), "\n", Arrays.asList(
+            TestFiles.header("first"),
+            TestFiles.header("second"),
+            TestFiles.record(2, 0x10000, (byte) 1, (byte) 2, (byte) 3),
+            TestFiles.record(2, 0x200000, (byte) 4),
+            TestFiles.record(8, 0x10000)));
+        SReader expected = new SLoader(file).withSidecar().load();
+        File sidecar = new File(file.getPath() + ".idx");
+
+        assertTrue("Saved", sidecar.isFile());
+
+        SReader actual = Sidecar.forSource(sidecar, file.toPath(), SETTINGS).read();
+
+        assertNotNull("Restored", actual);
+        assertEquals("Headers", expected.getHeaders(), actual.getHeaders());
+        assertEquals("First", expected.getFirstAddress(), actual.getFirstAddress());
+        assertEquals("Last", expected.getLastAddress(), actual.getLastAddress());
+        assertEquals("Span", expected.getSpan(), actual.getSpan());
+        assertEquals("Segments", 2, actual.getImage().getSegments().size());
+        assertArrayEquals("Data", expected.getData(), actual.getData());
+    }
+
+
+    /**
+     * A later load copies the data from the sidecar while the size and modified time of the file are unchanged
+     */
+    @Test
+    public void test_used() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", line(0x100, (byte) 1));
+        File sidecar = folder.newFile("copy.idx");
+
+        new SLoader(file).withSidecar(sidecar).load();
+
+        long modified = file.lastModified();
+
+        TestFiles.write(file, "\n", line(0x100, (byte) 2));
+        assertTrue("Reset time", file.setLastModified(modified));
+
+        SReader reader = new SLoader(file).withSidecar(sidecar).load();
+
+        assertArrayEquals("Data", new byte[] { 1 }, reader.getData());
+    }
+
+
+    /**
+     * A sidecar is replaced if the file changes
+     */
+    @Test
+    public void test_changedFile() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", line(0x100, (byte) 1));
+        File sidecar = folder.newFile("copy.idx");
+
+        new SLoader(file).withSidecar(sidecar).load();
+        TestFiles.write(file, "\n", line(0x100, (byte) 2, (byte) 3));
+
+        SReader reader = new SLoader(file).withSidecar(sidecar).load();
+
+        assertArrayEquals("Data", new byte[] { 2, 3 }, reader.getData());
+        assertArrayEquals("Saved", new byte[] { 2, 3 }, restore(sidecar, file, SETTINGS).getData());
+    }
+
+
+    /**
+     * A sidecar is not used by a loader with different settings
+     */
+    @Test
+    public void test_changedSettings() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", Arrays.asList(
+            TestFiles.record(1, 0x100, (byte) 1),
+            TestFiles.record(1, 0x102, (byte) 2),
+            TestFiles.record(9, 0)));
+        File sidecar = folder.newFile("copy.idx");
+
+        new SLoader(file).withSidecar(sidecar).load();
+
+        SReader reader = new SLoader(file).withSidecar(sidecar).withFillByte((byte) 0xff).load();
+
+        assertArrayEquals("Data", new byte[] { 1, (byte) 0xff, 2 }, reader.getData());
+        assertNull("Old settings", Sidecar.forSource(sidecar, file.toPath(), SETTINGS).read());
+    }
+
+
+    /**
+     * A damaged or truncated sidecar is ignored
+     */
+    @Test
+    public void test_damaged() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", TestFiles.dataFile(new Random(24), 100));
+        File sidecar = folder.newFile("copy.idx");
+        SReader expected = new SLoader(file).withSidecar(sidecar).load();
+        byte[] saved = Files.readAllBytes(sidecar.toPath());
+
+        for (int i = 0; i < saved.length; i += 7) {
+            byte[] damaged = saved.clone();
+
+            damaged[i] ^= 0x10;
+            Files.write(sidecar.toPath(), damaged);
+
+            assertNull("Damaged at " + i, Sidecar.forSource(sidecar, file.toPath(), SETTINGS).read());
+        }
+
+        Files.write(sidecar.toPath(), Arrays.copyOf(saved, saved.length / 2));
+
+        assertNull("Truncated", Sidecar.forSource(sidecar, file.toPath(), SETTINGS).read());
+        assertArrayEquals("Reloaded", expected.getData(), new SLoader(file).withSidecar(sidecar).load().getData());
+        assertNotNull("Replaced", Sidecar.forSource(sidecar, file.toPath(), SETTINGS).read());
+    }
+
+
+    /**
+     * A sidecar with an intact CRC but an impossible number of segments is ignored
+     */
+    @Test
+    public void test_segmentCount() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", line(0x100, (byte) 1));
+        File sidecar = folder.newFile("copy.idx");
+
+        new SLoader(file).withSidecar(sidecar).load();
+
+        byte[] saved = Files.readAllBytes(sidecar.toPath());
+        int offset = (6 * Long.BYTES) + (2 * Integer.BYTES) + SETTINGS.length();
+
+        assertEquals("Segments", 1, ByteBuffer.wrap(saved).getInt(offset));
+
+        for (int count : new int[] { -1, Integer.MAX_VALUE, 2 }) {
+            ByteBuffer crafted = ByteBuffer.wrap(saved.clone());
+            CRC32 crc = new CRC32();
+
+            crafted.putInt(offset, count);
+            crc.update(crafted.array(), 0, saved.length - Long.BYTES);
+            crafted.putLong(saved.length - Long.BYTES, crc.getValue());
+            Files.write(sidecar.toPath(), crafted.array());
+
+            assertNull("Count " + count, Sidecar.forSource(sidecar, file.toPath(), SETTINGS).read());
+        }
+    }
+
+
+    /**
+     * Failures to write the sidecar are ignored
+     */
+    @Test
+    public void test_unwritable() throws Exception {
+        File file = TestFiles.write(folder.newFile(), "\n", line(0x100, (byte) 1));
+        File sidecar = new File(new File(folder.getRoot(), "missing"), "copy.idx");
+
+        SReader reader = new SLoader(file).withSidecar(sidecar).load();
+
+        assertArrayEquals("Data", new byte[] { 1 }, reader.getData());
+        assertFalse("Saved", sidecar.exists());
+        assertEquals("Temporary files", 1, folder.getRoot().list().length);
+    }
+
+
+    /**
+     * There is no sidecar for a file that does not exist
+     */
+    @Test
+    public void test_missingSource() {
+        assertNull("Sidecar", Sidecar.forSource(new File(folder.getRoot(), "copy.idx"),
+                                                Paths.get(folder.getRoot().getPath(), "missing.s19"),
+                                                SETTINGS));
+    }
+
+
+    @Nonnull
+    private static List<String> line(int address, @Nonnull byte... data) {
+        return Arrays.asList(TestFiles.record(1, address, data), TestFiles.record(9, 0));
+    }
+
+
+    @Nonnull
+    private static SReader restore(@Nonnull File sidecar, @Nonnull File file, @Nonnull String settings)
+            throws IOException {
+        SReader reader = Sidecar.forSource(sidecar, file.toPath(), settings).read();
+
+        if (reader == null) {
+            throw new IOException("Sidecar " + sidecar + " was not restored");
+        }
+
+        return reader;
+    }
+}
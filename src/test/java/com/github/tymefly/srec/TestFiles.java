@@ -0,0 +1,220 @@
+package com.github.tymefly.srec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+
+/**
+ * Builds S-Record files for the unit tests without using the writers that are under test
+ */
+final class TestFiles {
+    private static final String DIGITS = "0123456789ABCDEF";
+
+    private TestFiles() {
+    }
+
+
+    /**
+     * Returns a single record with a valid count and checksum
+     * @param type          Record type, 0 to 9
+     * @param address       Value of the address field
+     * @param data          Data field
+     * @return the record, without a line separator
+     */
+    @Nonnull
+    static String record(int type, long address, @Nonnull byte... data) {
+        int addressSize = SRecord.fromType(type).getAddressSize();
+        int count = addressSize + data.length + 1;
+        int sum = count;
+        StringBuilder line = new StringBuilder();
+
+        line.append('S').append(type);
+        hex(line, count);
+
+        for (int i = addressSize - 1; i >= 0; i--) {
+            int value = (int) (address >>> (i * Byte.SIZE)) & 0xff;
+
+            sum += value;
+            hex(line, value);
+        }
+
+        for (byte value : data) {
+            sum += value & 0xff;
+            hex(line, value);
+        }
+
+        hex(line, ~sum);
+
+        return line.toString();
+    }
+
+
+    /**
+     * Returns a single Intel HEX record with a valid checksum
+     * @param type          Record type, 0 to 5
+     * @param offset        Value of the 16 bit address offset field
+     * @param data          Data field
+     * @return the record, without a line separator
+     */
+    @Nonnull
+    static String intel(int type, int offset, @Nonnull byte... data) {
+        int sum = data.length + (offset >> 8) + (offset & 0xff) + type;
+        StringBuilder line = new StringBuilder(":");
+
+        hex(line, data.length);
+        hex(line, offset >> 8);
+        hex(line, offset);
+        hex(line, type);
+
+        for (byte value : data) {
+            sum += value & 0xff;
+            hex(line, value);
+        }
+
+        hex(line, -sum);
+
+        return line.toString();
+    }
+
+
+    private static void hex(@Nonnull StringBuilder line, int value) {
+        line.append(DIGITS.charAt((value >> 4) & 0xf)).append(DIGITS.charAt(value & 0xf));
+    }
+
+
+    /**
+     * Returns a header record
+     * @param text          Text of the header
+     * @return the header record
+     */
+    @Nonnull
+    static String header(@Nonnull String text) {
+        return record(0, 0, text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+
+    /**
+     * Returns a record with the last digit of its checksum changed
+     * @param record        Valid record
+     * @return the record with an invalid checksum
+     */
+    @Nonnull
+    static String corrupt(@Nonnull String record) {
+        char last = record.charAt(record.length() - 1);
+
+        return record.substring(0, record.length() - 1) + (last == '0' ? '1' : '0');
+    }
+
+
+    /**
+     * Returns the lines of a large S3 file with a header, data records of random content at increasing
+     * addresses with some records that overwrite earlier data, an S5 or S6 count record and an S7 termination record
+     * @param random        Source of the data
+     * @param records       Number of data records
+     * @return the lines of the file
+     */
+    @Nonnull
+    static List<String> dataFile(@Nonnull Random random, int records) {
+        List<String> lines = new ArrayList<>();
+        long address = 0x08000000L;
+
+        lines.add(header("test file"));
+
+        for (int i = 0; i < records; i++) {
+            byte[] data = new byte[1 + random.nextInt(32)];
+            long target = ((i % 50) == 49 ? address - 64 : address);
+
+            random.nextBytes(data);
+            lines.add(record(3, target, data));
+            address += data.length;
+        }
+
+        lines.add(record(records > 0xffff ? 6 : 5, records));
+        lines.add(record(7, 0x08000000L));
+
+        return lines;
+    }
+
+
+    /**
+     * Write lines to a file
+     * @param file          File to write
+     * @param separator     Separator that ends each line
+     * @param lines         Lines of text
+     * @return the {@code file}
+     * @throws IOException if the file could not be written
+     */
+    @Nonnull
+    static File write(@Nonnull File file, @Nonnull String separator, @Nonnull List<String> lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+
+        for (String line : lines) {
+            text.append(line).append(separator);
+        }
+
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.US_ASCII));
+
+        return file;
+    }
+
+
+    /**
+     * Returns a description of everything that a file contains, in file order, for comparing two parses
+     * @return a visitor that records every event
+     */
+    @Nonnull
+    static RecordingVisitor recorder() {
+        return new RecordingVisitor();
+    }
+
+
+    /**
+     * Records every event as a line of text
+     */
+    static final class RecordingVisitor implements SVisitor {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onHeader(@Nonnull String header) {
+            events.add("header " + header);
+        }
+
+        @Override
+        public void onData(long address, @Nonnull byte[] buffer, int offset, int length) {
+            StringBuilder event = new StringBuilder("data ").append(Long.toHexString(address)).append(' ');
+
+            for (int i = offset; i < offset + length; i++) {
+                event.append(String.format("%02x", buffer[i]));
+            }
+
+            events.add(event.toString());
+        }
+
+        @Override
+        public void onCount(int count) {
+            events.add("count " + count);
+        }
+
+        @Override
+        public void onStart(long address) {
+            events.add("start " + Long.toHexString(address));
+        }
+
+        @Override
+        public void onError(@Nonnull SRecordException error) {
+            events.add("error " + error.getMessage());
+        }
+
+        @Nonnull
+        List<String> getEvents() {
+            return events;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.tymefly.srec;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+
+/**
+ * Unit tests for the Java 8 version of {@link VectorCodec}
+ */
+public class VectorCodecTest {
+    /**
+     * The codec is never available, so Hex never passes it any data
+     */
+    @Test
+    public void test_unavailable() {
+        assertFalse("Available", VectorCodec.isAvailable());
+        assertEquals("Minimum length", Integer.MAX_VALUE, VectorCodec.minimumLength());
+        assertEquals("Vector bytes", 0, Hex.vectorBytes(256));
+    }
+
+
+    /**
+     * Decoding is a programming error
+     */
+    @Test(expected = IllegalStateException.class)
+    public void test_decode() {
+        VectorCodec.decode(new byte[64], 0, new byte[32], 32);
+    }
+
+
+    /**
+     * Encoding is a programming error
+     */
+    @Test(expected = IllegalStateException.class)
+    public void test_encode() {
+        VectorCodec.encode(ByteBuffer.allocate(64), ByteBuffer.allocate(32), 0, 32);
+    }
+}